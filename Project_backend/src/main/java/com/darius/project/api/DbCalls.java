@@ -0,0 +1,57 @@
+package com.darius.project.api;
+import com.darius.project.service.DbExecutor;
+import org.springframework.http.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs a controller's database work on the {@link DbExecutor} and returns the response as a future, so the servlet
+ * thread is handed back while the work waits for SQLite and Spring completes the request when the future does. Work
+ * the executor refuses, or that is still queued when it times out, never ran; it is answered 503 with Retry-After, as a
+ * refusal by admission control is. Work still running at its own timeout may yet apply, so it is answered 500 without
+ * Retry-After.
+ */
+final class DbCalls {
+    private DbCalls() {
+    }
+
+    static <R extends ResponseEntity<?>> CompletableFuture<R> offload(DbExecutor dbExecutor, Supplier<R> work) {
+        try {
+            return unavailableWhenSaturated(dbExecutor.supply(work));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(unavailable());
+        }
+    }
+
+    /**
+     * {@code response}, answered 503 instead when the executor refused its work or skipped it, and 500 when it stopped
+     * waiting for work still running; other failures pass through.
+     */
+    static <R extends ResponseEntity<?>> CompletableFuture<R> unavailableWhenSaturated(CompletableFuture<R> response) {
+        return response.exceptionally(error -> {
+            Throwable cause = unwrap(error);
+            if (cause instanceof RejectedExecutionException || cause instanceof TimeoutException) {
+                return unavailable();
+            }
+            if (cause instanceof DbExecutor.StillRunningException) {
+                return stillRunning();
+            }
+            throw error instanceof CompletionException completion ? completion : new CompletionException(cause);
+        });
+    }
+
+    static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    // A body-less response fits any ResponseEntity type.
+    @SuppressWarnings("unchecked")
+    private static <R extends ResponseEntity<?>> R unavailable() {
+        return (R) ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R extends ResponseEntity<?>> R stillRunning() {
+        return (R) ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    }
+}
@@ -0,0 +1,43 @@
+package com.darius.project.api;
+import org.springframework.http.*;
+
+/**
+ * Conditional GETs keyed on the services' {@link com.darius.project.service.DataVersion}. The tag is read before the
+ * data, so a write racing with the request leaves the response tagged older than it is and the next request fetches
+ * again. A request whose {@code If-None-Match} carries the current tag is answered 304 before any repository is read.
+ * Responses are marked {@code no-cache}: browsers keep them but revalidate on every use, which costs only the 304.
+ */
+final class ETags {
+    private ETags() {
+    }
+
+    /** True when {@code ifNoneMatch} (the request header, possibly null) names {@code etag} or is {@code *}. */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+    }
+
+    /** The response with the tag added, if it is a success; errors are not tagged. */
+    static <T> ResponseEntity<T> tagged(ResponseEntity<T> response, String etag) {
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            return response;
+        }
+        return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders())
+                .eTag(etag).cacheControl(CacheControl.noCache()).body(response.getBody());
+    }
+}
@@ -0,0 +1,27 @@
+package com.darius.project.api;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Gives the streamed exports a longer async timeout than the rest of the API: they last as long as the client's
+ * download, while every other asynchronous response keeps Spring's default. Streamed bodies are started as callables,
+ * and this runs before the request goes asynchronous, while its timeout can still be changed.
+ */
+class ExportTimeout implements CallableProcessingInterceptor {
+    private final long timeoutMillis;
+
+    ExportTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+        HttpServletRequest servletRequest = request.getNativeRequest(HttpServletRequest.class);
+        if (request instanceof AsyncWebRequest asyncRequest && servletRequest != null
+                && RequestAdmissionInterceptor.STREAMING_PATHS.contains(servletRequest.getRequestURI())) {
+            asyncRequest.setTimeout(timeoutMillis);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.darius.project.api;
+import com.darius.project.repository.Database.IdempotencyDB;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.*;
+import org.springframework.http.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Answers a repeated {@code Idempotency-Key} with the response the key first produced, without running the request
+ * again. Recent responses are kept in a bounded in-memory map and written through to {@link IdempotencyDB}, so a
+ * retry is recognized after a restart too; both forget keys after the TTL. Requests arriving with a key that is still
+ * being executed wait for that execution instead of starting their own, without holding a thread. Server errors are
+ * not stored, so they can be retried. A response is written to the database on {@code storeExecutor}, as it may
+ * complete on a thread that must not wait for another write, e.g. the group commit's.
+ */
+public class IdempotencyStore<T> implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotencyStore.class);
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /** The key was used before with a different request. */
+    public static class KeyReusedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public KeyReusedException() {
+            super("Idempotency key was already used for a different request");
+        }
+    }
+
+    private static final class Stored<T> {
+        private final ResponseEntity<T> response;
+        private final String fingerprint;
+        private final long createdAtMillis;
+
+        private Stored(ResponseEntity<T> response, String fingerprint, long createdAtMillis) {
+            this.response = response;
+            this.fingerprint = fingerprint;
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+
+    private static final class InFlight<T> {
+        private final String fingerprint;
+        private final CompletableFuture<ResponseEntity<T>> result = new CompletableFuture<>();
+
+        private InFlight(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private final String scope;
+    private final Class<T> type;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyDB idempotencyDB;
+    private final Executor storeExecutor;
+    private final long ttlMillis;
+    private final Map<String, Stored<T>> recent;
+    private final ConcurrentHashMap<String, InFlight<T>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong lastPurgeMillis = new AtomicLong();
+
+    public IdempotencyStore(String scope, Class<T> type, ObjectMapper objectMapper, IdempotencyDB idempotencyDB, Executor storeExecutor,
+                            long ttlMillis, int maxEntries) {
+        this.scope = scope;
+        this.type = type;
+        this.objectMapper = objectMapper;
+        this.idempotencyDB = idempotencyDB;
+        this.storeExecutor = storeExecutor;
+        this.ttlMillis = ttlMillis;
+        this.recent = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Stored<T>> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Runs {@code action} once per key and returns its response; later calls with the key get the same response.
+     * Reads the store, so call it where the database may be waited for. Throws KeyReusedException when the key was
+     * used with a different {@code request}.
+     */
+    public CompletableFuture<ResponseEntity<T>> execute(String key, Object request, Supplier<CompletableFuture<ResponseEntity<T>>> action) {
+        String fingerprint = fingerprint(request);
+        Stored<T> stored = lookup(key);
+        if (stored != null) {
+            return CompletableFuture.completedFuture(replay(stored, fingerprint));
+        }
+        InFlight<T> mine = new InFlight<>(fingerprint);
+        InFlight<T> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            LOGGER.info("Waiting for the running request with idempotency key: {}", key);
+            if (!running.fingerprint.equals(fingerprint)) {
+                throw new KeyReusedException();
+            }
+            return running.result.thenApply(IdempotencyStore::withReplayedHeader);
+        }
+        CompletableFuture<ResponseEntity<T>> response;
+        try {
+            // It may have completed between the lookup and claiming the key.
+            stored = lookup(key);
+            if (stored != null) {
+                response = CompletableFuture.completedFuture(replay(stored, fingerprint));
+            } else {
+                response = action.get().thenApply(result -> {
+                    if (!result.getStatusCode().is5xxServerError()) {
+                        remember(key, new Stored<>(result, fingerprint, System.currentTimeMillis()));
+                    }
+                    return result;
+                });
+            }
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        return response.whenComplete((result, error) -> {
+            if (error == null) {
+                mine.result.complete(result);
+            } else {
+                mine.result.completeExceptionally(error);
+            }
+            inFlight.remove(key, mine);
+        });
+    }
+
+    private ResponseEntity<T> replay(Stored<T> stored, String fingerprint) {
+        if (!stored.fingerprint.equals(fingerprint)) {
+            throw new KeyReusedException();
+        }
+        return withReplayedHeader(stored.response);
+    }
+
+    private Stored<T> lookup(String key) {
+        long notBefore = System.currentTimeMillis() - ttlMillis;
+        Stored<T> stored = recent.get(key);
+        if (stored != null && stored.createdAtMillis >= notBefore) {
+            return stored;
+        }
+        IdempotencyDB.StoredResponse row = idempotencyDB.find(scope, key, notBefore);
+        if (row == null) {
+            return null;
+        }
+        try {
+            stored = new Stored<>(ResponseEntity.status(row.getStatus()).body(objectMapper.readValue(row.getBody(), type)),
+                    row.getFingerprint(), row.getCreatedAtMillis());
+            recent.put(key, stored);
+            return stored;
+        } catch (JsonProcessingException e) {
+            LOGGER.error("Error reading stored response for idempotency key: {}, error: {}", key, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // Later requests with the key find it in memory at once; the database copy follows on the store executor.
+    private void remember(String key, Stored<T> stored) {
+        recent.put(key, stored);
+        try {
+            storeExecutor.execute(() -> save(key, stored));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Could not store response for idempotency key: {}, keeping it in memory only", key);
+        }
+    }
+
+    private void save(String key, Stored<T> stored) {
+        try {
+            String body = objectMapper.writeValueAsString(stored.response.getBody());
+            idempotencyDB.save(scope, key, new IdempotencyDB.StoredResponse(stored.response.getStatusCode().value(), body,
+                    stored.fingerprint, stored.createdAtMillis));
+        } catch (JsonProcessingException e) {
+            LOGGER.error("Error storing response for idempotency key: {}, error: {}", key, e.getMessage(), e);
+        }
+        long last = lastPurgeMillis.get();
+        if (stored.createdAtMillis - last >= PURGE_INTERVAL_MILLIS && lastPurgeMillis.compareAndSet(last, stored.createdAtMillis)) {
+            idempotencyDB.deleteOlderThan(stored.createdAtMillis - ttlMillis);
+        }
+    }
+
+    private static <T> ResponseEntity<T> withReplayedHeader(ResponseEntity<T> response) {
+        return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders())
+                .header(REPLAYED_HEADER, "true").body(response.getBody());
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint request", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        idempotencyDB.closeConnection();
+    }
+}
@@ -0,0 +1,66 @@
+package com.darius.project.api;
+import org.springframework.http.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Keyset pagination for listing endpoints. A page is requested with {@code ?limit=N}, and the next one with
+ * {@code ?after=<cursor>} taken from the {@value #HEADER} header of the previous response; the header is absent on the
+ * last page. The cursor is opaque to clients: it names the listing's order and carries the id and order value of the
+ * last row, so the next query starts right after it instead of skipping rows.
+ */
+final class PageCursor {
+    static final String HEADER = "X-Next-Cursor";
+    static final int DEFAULT_LIMIT = 20;
+    static final int MAX_LIMIT = 100;
+
+    private final String order;
+    private final int id;
+    private final String key;
+
+    PageCursor(String order, int id, String key) {
+        this.order = order;
+        this.id = id;
+        this.key = key;
+    }
+
+    int getId() { return id; }
+    String getKey() { return key; }
+
+    /** The cursor sent as {@code after}, or null for the first page. Throws IllegalArgumentException when it is not one of this listing's. */
+    static PageCursor decode(String cursor, String order) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 3);
+            if (parts.length == 3 && parts[0].equals(order)) {
+                return new PageCursor(parts[0], Integer.parseInt(parts[1]), parts[2]);
+            }
+        } catch (IllegalArgumentException e) {
+            // Falls through to the same error as a cursor of another listing.
+        }
+        throw new IllegalArgumentException("Invalid cursor");
+    }
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((order + "|" + id + "|" + key).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int limit(Integer requested) {
+        return requested == null ? DEFAULT_LIMIT : Math.max(1, Math.min(requested, MAX_LIMIT));
+    }
+
+    /**
+     * Answers with a page fetched as {@code limit + 1} rows: the extra row only tells that there is a next page, whose
+     * cursor is made from the page's last row.
+     */
+    static <T> ResponseEntity<List<T>> respond(List<T> rows, int limit, Function<T, PageCursor> cursorOf) {
+        if (rows.size() <= limit) {
+            return ResponseEntity.ok(rows);
+        }
+        List<T> page = new ArrayList<>(rows.subList(0, limit));
+        return ResponseEntity.ok().header(HEADER, cursorOf.apply(page.get(limit - 1)).encode()).body(page);
+    }
+}
@@ -0,0 +1,87 @@
+package com.darius.project.api;
+import com.darius.project.service.*;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.*;
+import org.slf4j.*;
+import org.springframework.http.*;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Runs before every API controller. Reservations and logins are rate limited per client IP; requests over the limit
+ * are answered 429 without reaching a service. Admitted requests then pass {@link AdmissionControl}, shared with the
+ * rest of the process, and get 503 when it refuses them. The admission is held until the response is complete,
+ * including any asynchronous part of it. Streamed exports are the exception: they are rate limited but not admitted, as
+ * a slow client would hold the admission for as long as it takes to read the whole table.
+ */
+public class RequestAdmissionInterceptor implements HandlerInterceptor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestAdmissionInterceptor.class);
+    private static final String ADMITTED = RequestAdmissionInterceptor.class.getName() + ".admitted";
+    private static final String LOGIN_PATH = "/api/auth/login";
+    private static final String RESERVATIONS_PATH = "/api/reservations";
+    // Their handlers return at once; the rows are read chunk by chunk while the client downloads them.
+    static final Set<String> STREAMING_PATHS = Set.of("/api/trips/export", "/api/reservations/export");
+
+    private final RateLimiter<String> reservationLimiter;
+    private final RateLimiter<String> loginLimiter;
+    private final AdmissionControl admissionControl;
+
+    public RequestAdmissionInterceptor(RateLimiter<String> reservationLimiter, RateLimiter<String> loginLimiter, AdmissionControl admissionControl) {
+        this.reservationLimiter = reservationLimiter;
+        this.loginLimiter = loginLimiter;
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        // An async dispatch continues a request that was admitted already.
+        if (request.getDispatcherType() != DispatcherType.REQUEST || CorsUtils.isPreFlightRequest(request)) {
+            return true;
+        }
+        RateLimiter<String> limiter = limiterFor(request.getRequestURI());
+        if (limiter != null && !limiter.tryAcquire(request.getRemoteAddr())) {
+            LOGGER.warn("Rate limit exceeded by {} on {}", request.getRemoteAddr(), request.getRequestURI());
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, "Too many requests, slow down");
+            return false;
+        }
+        if (STREAMING_PATHS.contains(request.getRequestURI())) {
+            return true;
+        }
+        if (!admissionControl.tryEnter()) {
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, try again");
+            return false;
+        }
+        request.setAttribute(ADMITTED, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(ADMITTED) != null) {
+            request.removeAttribute(ADMITTED);
+            admissionControl.exit();
+        }
+    }
+
+    private RateLimiter<String> limiterFor(String path) {
+        if (path.equals(LOGIN_PATH)) {
+            return loginLimiter;
+        }
+        if (path.equals(RESERVATIONS_PATH) || path.startsWith(RESERVATIONS_PATH + "/")) {
+            return reservationLimiter;
+        }
+        return null;
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"message\":\"" + message + "\"}");
+    }
+
+    public RateLimiter<String> getReservationLimiter() { return reservationLimiter; }
+    public RateLimiter<String> getLoginLimiter() { return loginLimiter; }
+}
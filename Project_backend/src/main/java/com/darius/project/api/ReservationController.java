@@ -1,10 +1,14 @@
 package com.darius.project.api;
 import com.darius.project.domain.*;
 import com.darius.project.service.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.*;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @CrossOrigin(origins = "http://localhost:3000")
@@ -12,90 +16,244 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/reservations")
 public class ReservationController {
     private static final Logger LOGGER = LoggerFactory.getLogger(ReservationController.class);
+    private static final RowExport<ReservationDto> RESERVATION_EXPORT = new RowExport<>("reservations",
+            new String[]{"id", "tripId", "customerId", "tickets", "customerName", "tripName"},
+            dto -> new Object[]{dto.getId(), dto.getTripId(), dto.getCustomerId(), dto.getTickets(), dto.getCustomerName(), dto.getTripName()});
 
     private final ReservationService reservationService;
     private final CustomerService customerService;
     private final TripService tripService;
+    private final BookingService bookingService;
+    private final SeatHoldService seatHoldService;
+    private final WaitlistService waitlistService;
+    private final IdempotencyStore<ReservationResponse> idempotencyStore;
+    private final DataVersion dataVersion;
+    private final ObjectMapper objectMapper;
+    private final DbExecutor dbExecutor;
 
-    public ReservationController(ReservationService reservationService, CustomerService customerService, TripService tripService) {
+    public ReservationController(ReservationService reservationService, CustomerService customerService, TripService tripService,
+                                 BookingService bookingService, SeatHoldService seatHoldService, WaitlistService waitlistService,
+                                 IdempotencyStore<ReservationResponse> idempotencyStore, DataVersion dataVersion, ObjectMapper objectMapper,
+                                 DbExecutor dbExecutor) {
         this.reservationService = reservationService;
         this.customerService = customerService;
         this.tripService = tripService;
+        this.bookingService = bookingService;
+        this.seatHoldService = seatHoldService;
+        this.waitlistService = waitlistService;
+        this.idempotencyStore = idempotencyStore;
+        this.dataVersion = dataVersion;
+        this.objectMapper = objectMapper;
+        this.dbExecutor = dbExecutor;
     }
 
+    // Database work runs on the DbExecutor (see DbCalls), off the request thread; the export streams on Spring's
+    // async executor instead, as it lasts as long as the client's download.
+
     @PostMapping
-    public ResponseEntity<ReservationResponse> createReservation(@RequestBody ReservationRequest request) {
+    public CompletableFuture<ResponseEntity<ReservationResponse>> createReservation(@RequestBody ReservationRequest request,
+                                                                                    @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        Supplier<CompletableFuture<ResponseEntity<ReservationResponse>>> work = idempotencyKey == null || idempotencyKey.isBlank()
+                ? () -> book(request)
+                : () -> idempotencyStore.execute(idempotencyKey, request, () -> book(request));
+        CompletableFuture<ResponseEntity<ReservationResponse>> response;
+        try {
+            response = dbExecutor.supplyCompose(work);
+        } catch (RejectedExecutionException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        // Failures that reach here are a refused or timed-out handoff, a reused key, or a booking that outlived its timeout.
+        return response.exceptionally(error -> {
+            Throwable cause = DbCalls.unwrap(error);
+            if (cause instanceof IdempotencyStore.KeyReusedException) {
+                return ResponseEntity.unprocessableEntity().body(new ReservationResponse(false, cause.getMessage(), null));
+            }
+            return bookingFailed(cause);
+        });
+    }
+
+    // Runs on the executor's thread, which takes the seats and queues the booking; no thread waits for the commit. The
+    // response is built on the committing thread, so everything it needs is read before the booking is queued.
+    private CompletableFuture<ResponseEntity<ReservationResponse>> book(ReservationRequest request) {
         LOGGER.info("Creating reservation for customer: {}, trip: {}, tickets: {}",
                 request.getCustomerName(), request.getTripId(), request.getTickets());
 
+        CompletableFuture<Reservation> booked;
+        Trip trip;
         try {
-            Trip trip = tripService.findById(request.getTripId());
-            if (trip == null) {
-                return ResponseEntity.badRequest().body(new ReservationResponse(false, "Trip not found", null));
-            }
+            trip = tripService.findById(request.getTripId());
+            booked = bookingService.bookAsync(request.getCustomerName(), request.getCustomerPhone(), request.getTripId(), request.getTickets());
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(bookingFailed(e));
+        }
+        return booked.thenApply(reservation -> created(request, reservation, trip))
+                .exceptionally(error -> bookingFailed(DbCalls.unwrap(error)));
+    }
+
+    private ResponseEntity<ReservationResponse> created(ReservationRequest request, Reservation reservation, Trip trip) {
+        ReservationDto dto = new ReservationDto(reservation.getId(), request.getTripId(), reservation.getCustomer(), request.getTickets(), request.getCustomerName(), trip != null ? trip.getAttractionName() : "Unknown");
+        return ResponseEntity.status(HttpStatus.CREATED).body(new ReservationResponse(true, "Reservation created successfully", dto));
+    }
+
+    private ResponseEntity<ReservationResponse> bookingFailed(Throwable e) {
+        if (e instanceof IllegalArgumentException || e instanceof IllegalStateException) {
+            return ResponseEntity.badRequest().body(new ReservationResponse(false, e.getMessage(), null));
+        }
+        if (e instanceof RejectedExecutionException || e instanceof TimeoutException) {
+            // A trip in flash-sale mode with a full mailbox, or database work refused or still queued at the timeout:
+            // nothing was booked. Not stored under the idempotency key, so it can be retried.
+            String message = e instanceof TimeoutException ? "Timed out waiting for the database" : e.getMessage();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(new ReservationResponse(false, message, null));
+        }
+        if (e instanceof DbExecutor.StillRunningException) {
+            // The booking is queued and may still commit; under an idempotency key a retry gets its outcome.
+            LOGGER.warn("Stopped waiting for reservation: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ReservationResponse(false, e.getMessage(), null));
+        }
+        LOGGER.error("Error creating reservation: {}", e.getMessage(), e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ReservationResponse(false, "Failed to create reservation", null));
+    }
+
+    @PostMapping("/holds")
+    public CompletableFuture<ResponseEntity<HoldDto>> createHold(@RequestBody ReservationRequest request) {
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("Creating hold for customer: {}, trip: {}, tickets: {}",
+                    request.getCustomerName(), request.getTripId(), request.getTickets());
 
-            if (trip.getAvailableSeats() < request.getTickets()) {
-                return ResponseEntity.badRequest().body(new ReservationResponse(false, "Not enough seats available", null));
+            try {
+                SeatHoldService.Hold hold = seatHoldService.hold(request.getCustomerName(), request.getCustomerPhone(), request.getTripId(), request.getTickets());
+                return ResponseEntity.status(HttpStatus.CREATED).body(new HoldDto(hold.getId(), hold.getTripId(), hold.getTickets(), hold.getExpiresAtMillis()));
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                return ResponseEntity.badRequest().build();
+            } catch (Exception e) {
+                LOGGER.error("Error creating hold: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
             }
+        });
+    }
+
+    @PostMapping("/holds/{holdId}/confirm")
+    public CompletableFuture<ResponseEntity<ReservationResponse>> confirmHold(@PathVariable String holdId) {
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("Confirming hold: {}", holdId);
 
-            Customer customer = customerService.findByCustomerName(request.getCustomerName());
-            if (customer == null) {
-                int customerId = generateCustomerId();
-                customer = new Customer(customerId, request.getCustomerName(), "", request.getCustomerPhone());
-                customerService.save(customer);
+            try {
+                Reservation reservation = seatHoldService.confirm(holdId);
+                Customer customer = customerService.findById(reservation.getCustomer());
+                Trip trip = tripService.findById(reservation.getTrip());
+
+                ReservationDto dto = new ReservationDto(reservation.getId(), reservation.getTrip(), reservation.getCustomer(), reservation.getNumberOfTickets(),
+                        customer != null ? customer.getCustomerName() : "Unknown", trip != null ? trip.getAttractionName() : "Unknown");
+                return ResponseEntity.status(HttpStatus.CREATED).body(new ReservationResponse(true, "Reservation created successfully", dto));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ReservationResponse(false, e.getMessage(), null));
+            } catch (IllegalStateException e) {
+                return ResponseEntity.badRequest().body(new ReservationResponse(false, e.getMessage(), null));
+            } catch (Exception e) {
+                LOGGER.error("Error confirming hold: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ReservationResponse(false, "Failed to confirm hold", null));
             }
+        });
+    }
 
-            int reservationId = generateReservationId();
-            Reservation reservation = new Reservation(reservationId, request.getTripId(), customer.getId(), request.getTickets());
-            reservationService.save(reservationId, reservation);
-            trip.setAvailableSeats(trip.getAvailableSeats() - request.getTickets());
-            tripService.update(trip.getId(), trip);
+    @DeleteMapping("/holds/{holdId}")
+    public CompletableFuture<ResponseEntity<Map<String, String>>> releaseHold(@PathVariable String holdId) {
+        return DbCalls.offload(dbExecutor, () -> {
+            if (seatHoldService.release(holdId) == null) {return ResponseEntity.notFound().build();}
+            return ResponseEntity.ok(Map.of("message", "Hold released successfully"));
+        });
+    }
 
-            ReservationDto dto = new ReservationDto(reservationId, request.getTripId(), customer.getId(), request.getTickets(), customer.getCustomerName(), trip.getAttractionName());
-            return ResponseEntity.status(HttpStatus.CREATED).body(new ReservationResponse(true, "Reservation created successfully", dto));
+    @PostMapping("/waitlist")
+    public CompletableFuture<ResponseEntity<WaitlistDto>> joinWaitlist(@RequestBody ReservationRequest request) {
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("Adding customer: {} to the waitlist of trip: {} for {} tickets",
+                    request.getCustomerName(), request.getTripId(), request.getTickets());
 
-        } catch (Exception e) {
-            LOGGER.error("Error creating reservation: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ReservationResponse(false, "Failed to create reservation", null));
-        }
+            try {
+                WaitlistService.Entry entry = waitlistService.join(request.getCustomerName(), request.getCustomerPhone(), request.getTripId(), request.getTickets());
+                return ResponseEntity.status(HttpStatus.CREATED).body(new WaitlistDto(entry.getId(), entry.getTripId(), entry.getTickets(), waitlistService.waiting(entry.getTripId())));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            } catch (Exception e) {
+                LOGGER.error("Error joining waitlist: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            }
+        });
+    }
+
+    @DeleteMapping("/waitlist/{entryId}")
+    public CompletableFuture<ResponseEntity<Map<String, String>>> leaveWaitlist(@PathVariable Long entryId) {
+        return DbCalls.offload(dbExecutor, () -> {
+            if (waitlistService.leave(entryId) == null) {return ResponseEntity.notFound().build();}
+            return ResponseEntity.ok(Map.of("message", "Left the waitlist successfully"));
+        });
     }
 
     @GetMapping("/trip/{tripId}")
-    public ResponseEntity<List<ReservationDto>> getReservationsByTrip(@PathVariable Integer tripId) {
-        try {
-            List<Reservation> reservations = reservationService.findByTripId(tripId);
-            List<ReservationDto> dto = reservations.stream().map(this::convertToDto).collect(Collectors.toList());
-            return ResponseEntity.ok(dto);
-        } catch (Exception e) {
-            LOGGER.error("Error fetching reservations: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    public CompletableFuture<ResponseEntity<List<ReservationDto>>> getReservationsByTrip(@PathVariable Integer tripId, @RequestParam(required = false) String after,
+                                                                                         @RequestParam(required = false) Integer limit,
+                                                                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // Tagged with the data version (see ETags); a matching If-None-Match is answered 304 right away.
+        String etag = dataVersion.tag();
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return CompletableFuture.completedFuture(ETags.notModified(etag));
         }
+        return DbCalls.offload(dbExecutor, () -> {
+            try {
+                if (after != null || limit != null) {
+                    PageCursor cursor = PageCursor.decode(after, "trip-" + tripId);
+                    int pageSize = PageCursor.limit(limit);
+                    List<Reservation> reservations = reservationService.findPageByTripId(tripId, cursor == null ? null : cursor.getId(), pageSize + 1);
+                    return ETags.tagged(PageCursor.respond(convertToDtos(reservations), pageSize, dto -> new PageCursor("trip-" + tripId, dto.getId(), "")), etag);
+                }
+                List<Reservation> reservations = reservationService.findByTripId(tripId);
+                return ETags.tagged(ResponseEntity.ok(convertToDtos(reservations)), etag);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            } catch (Exception e) {
+                LOGGER.error("Error fetching reservations: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            }
+        });
     }
 
-    @DeleteMapping("/{id}")
-    public ResponseEntity<Map<String, String>> cancelReservation(@PathVariable Integer id) {
-        try {
-            Reservation reservation = reservationService.findById(id);
-            if (reservation == null) {return ResponseEntity.notFound().build();}
+    // Stream every reservation, or the trip's with tripId, as NDJSON or CSV (see RowExport). Each chunk resolves its
+    // customer and trip names with one lookup of each, as convertToDtos does for a page.
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportReservations(@RequestParam(required = false) Integer tripId,
+                                                                    @RequestParam(required = false) String format) {
+        LOGGER.info("Exporting reservations{} as {}", tripId == null ? "" : " for trip: " + tripId, format == null ? "ndjson" : format);
+        return RESERVATION_EXPORT.respond(format, objectMapper,
+                chunkConsumer -> reservationService.exportAll(tripId, chunk -> chunkConsumer.accept(convertToDtos(chunk))));
+    }
 
-            Trip trip = tripService.findById(reservation.getTrip());
-            if (trip != null) {
-                trip.setAvailableSeats(trip.getAvailableSeats() + reservation.getNumberOfTickets());
-                tripService.update(trip.getId(), trip);
+    @DeleteMapping("/{id}")
+    public CompletableFuture<ResponseEntity<Map<String, String>>> cancelReservation(@PathVariable Integer id) {
+        return DbCalls.offload(dbExecutor, () -> {
+            try {
+                Reservation reservation = bookingService.cancel(id);
+                if (reservation == null) {return ResponseEntity.notFound().build();}
+                return ResponseEntity.ok(Map.of("message", "Reservation cancelled successfully"));
+            } catch (RejectedExecutionException e) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("message", e.getMessage()));
+            } catch (Exception e) {
+                LOGGER.error("Error cancelling reservation: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("message", "Error cancelling reservation"));
             }
-
-            reservationService.delete(id);
-            return ResponseEntity.ok(Map.of("message", "Reservation cancelled successfully"));
-        } catch (Exception e) {
-            LOGGER.error("Error cancelling reservation: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("message", "Error cancelling reservation"));
-        }
+        });
     }
 
-    private ReservationDto convertToDto(Reservation reservation) {
-        Customer customer = customerService.findById(reservation.getCustomer());
-        Trip trip = tripService.findById(reservation.getTrip());
+    // Customers and trips are looked up once for the whole list, not once per reservation
+    private List<ReservationDto> convertToDtos(List<Reservation> reservations) {
+        Map<Integer, Customer> customers = customerService.findAllById(reservations.stream().map(Reservation::getCustomer).collect(Collectors.toSet()));
+        Map<Integer, Trip> trips = tripService.findAllById(reservations.stream().map(Reservation::getTrip).collect(Collectors.toSet()));
+        return reservations.stream()
+                .map(reservation -> convertToDto(reservation, customers.get(reservation.getCustomer()), trips.get(reservation.getTrip())))
+                .collect(Collectors.toList());
+    }
 
+    private ReservationDto convertToDto(Reservation reservation, Customer customer, Trip trip) {
         return new ReservationDto(
                 reservation.getId(),
                 reservation.getTrip(),
@@ -106,9 +264,6 @@ public class ReservationController {
         );
     }
 
-    private int generateReservationId() { return (int) (System.currentTimeMillis() % Integer.MAX_VALUE); }
-    private int generateCustomerId() { return (int) (System.currentTimeMillis() % Integer.MAX_VALUE); }
-
     public static class ReservationRequest {
         private Integer tripId;
         private String customerName;
@@ -130,6 +285,9 @@ public class ReservationController {
         private String message;
         private ReservationDto reservation;
 
+        public ReservationResponse() {
+        }
+
         public ReservationResponse(boolean success, String message, ReservationDto reservation) {
             this.success = success;
             this.message = message;
@@ -152,6 +310,9 @@ public class ReservationController {
         private String customerName;
         private String tripName;
 
+        public ReservationDto() {
+        }
+
         public ReservationDto(Integer id, Integer tripId, Integer customerId, Integer tickets, String customerName, String tripName) {
             this.id = id;
             this.tripId = tripId;
@@ -174,4 +335,50 @@ public class ReservationController {
         public String getTripName() { return tripName; }
         public void setTripName(String tripName) { this.tripName = tripName; }
     }
+
+    public static class HoldDto {
+        private String holdId;
+        private Integer tripId;
+        private Integer tickets;
+        private Long expiresAt;
+
+        public HoldDto(String holdId, Integer tripId, Integer tickets, Long expiresAt) {
+            this.holdId = holdId;
+            this.tripId = tripId;
+            this.tickets = tickets;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getHoldId() { return holdId; }
+        public void setHoldId(String holdId) { this.holdId = holdId; }
+        public Integer getTripId() { return tripId; }
+        public void setTripId(Integer tripId) { this.tripId = tripId; }
+        public Integer getTickets() { return tickets; }
+        public void setTickets(Integer tickets) { this.tickets = tickets; }
+        public Long getExpiresAt() { return expiresAt; }
+        public void setExpiresAt(Long expiresAt) { this.expiresAt = expiresAt; }
+    }
+
+    public static class WaitlistDto {
+        private Long entryId;
+        private Integer tripId;
+        private Integer tickets;
+        private Integer waiting;
+
+        public WaitlistDto(Long entryId, Integer tripId, Integer tickets, Integer waiting) {
+            this.entryId = entryId;
+            this.tripId = tripId;
+            this.tickets = tickets;
+            this.waiting = waiting;
+        }
+
+        public Long getEntryId() { return entryId; }
+        public void setEntryId(Long entryId) { this.entryId = entryId; }
+        public Integer getTripId() { return tripId; }
+        public void setTripId(Integer tripId) { this.tripId = tripId; }
+        public Integer getTickets() { return tickets; }
+        public void setTickets(Integer tickets) { this.tickets = tickets; }
+        public Integer getWaiting() { return waiting; }
+        public void setWaiting(Integer waiting) { this.waiting = waiting; }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+package com.darius.project.api;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.*;
+import org.springframework.http.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.*;
+
+/**
+ * Whole-table exports written to the response while they are read. The rows come in chunks from the service (see
+ * {@code TripService.exportAll}), and each chunk is written and flushed before the next is read, so the response
+ * starts at once and memory holds one chunk whatever the table size. {@code ?format=ndjson} (the default) writes one
+ * JSON object per line, {@code ?format=csv} a header line and one line per row.
+ */
+final class RowExport<T> {
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    static final MediaType CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+
+    private final String name;
+    private final String[] columns;
+    private final Function<T, Object[]> values;
+
+    /** An export saved as {@code name}.ndjson or .csv; {@code values} gives a row's CSV fields in {@code columns} order. */
+    RowExport(String name, String[] columns, Function<T, Object[]> values) {
+        this.name = name;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * The response that writes what {@code source} hands over, or 400 for an unknown format. Nothing is read before
+     * the body is written. A failure after that cuts the response short, which clients see as a broken transfer.
+     */
+    ResponseEntity<StreamingResponseBody> respond(String format, ObjectMapper objectMapper, Consumer<Consumer<List<T>>> source) {
+        boolean csv;
+        if (format == null || format.equalsIgnoreCase("ndjson")) {
+            csv = false;
+        } else if (format.equalsIgnoreCase("csv")) {
+            csv = true;
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> {
+            try {
+                if (csv) {
+                    writeCsv(out, source);
+                } else {
+                    writeNdjson(out, objectMapper, source);
+                }
+            } catch (UncheckedIOException e) {
+                // Usually the client going away; stops the export at the chunk being written.
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(csv ? CSV : NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(name + (csv ? ".csv" : ".ndjson")).build().toString())
+                .cacheControl(CacheControl.noStore())
+                .body(body);
+    }
+
+    private void writeNdjson(OutputStream out, ObjectMapper objectMapper, Consumer<Consumer<List<T>>> source) throws IOException {
+        // Flushing after every row would send a network packet per row; the chunk is flushed as a whole instead.
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Rows are ended by the newline below, not by Jackson's default space between root values.
+            generator.setRootValueSeparator(null);
+            source.accept(chunk -> {
+                try {
+                    for (T row : chunk) {
+                        writer.writeValue(generator, row);
+                        generator.writeRaw('\n');
+                    }
+                    generator.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private void writeCsv(OutputStream out, Consumer<Consumer<List<T>>> source) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeCsvLine(writer, columns);
+        source.accept(chunk -> {
+            try {
+                for (T row : chunk) {
+                    writeCsvLine(writer, values.apply(row));
+                }
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    // RFC 4180: a field with a comma, quote or line break is quoted, and its quotes doubled; null is an empty field.
+    private static void writeCsvLine(Writer writer, Object[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i] == null ? "" : fields[i].toString();
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+}
@@ -0,0 +1,143 @@
+package com.darius.project.api;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads uploads in the formats {@link RowExport} writes, handing over each row as soon as it is read so the upload is
+ * never held in memory. NDJSON is one JSON object per line. CSV starts with a header line naming the columns, and
+ * fields may be quoted as RFC 4180 allows, line breaks included. Rows are numbered by the line they start on, and a
+ * row that cannot be read is rejected without ending the upload.
+ */
+final class RowImport {
+    interface RowHandler<T> {
+        void row(long line, T row);
+    }
+
+    interface RejectHandler {
+        void reject(long line, String message);
+    }
+
+    private RowImport() {
+    }
+
+    static <T> void readNdjson(Reader reader, ObjectReader objectReader, RowHandler<T> rows, RejectHandler rejects) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        long number = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            if (line.isBlank()) {
+                continue;
+            }
+            T row;
+            try {
+                row = objectReader.readValue(line);
+            } catch (JsonProcessingException e) {
+                rejects.reject(number, "Invalid JSON: " + e.getOriginalMessage());
+                continue;
+            }
+            rows.row(number, row);
+        }
+    }
+
+    /** Each record as its fields keyed by header column; empty fields are left out. */
+    static void readCsv(Reader reader, RowHandler<Map<String, String>> rows, RejectHandler rejects) throws IOException {
+        CsvReader records = new CsvReader(new BufferedReader(reader));
+        List<String> header = records.next();
+        if (header == null) {
+            return;
+        }
+        header.replaceAll(String::trim);
+        while (true) {
+            long number = records.line;
+            List<String> fields = records.next();
+            if (fields == null) {
+                return;
+            }
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                continue;
+            }
+            if (fields.size() != header.size()) {
+                rejects.reject(number, "Expected " + header.size() + " fields, found " + fields.size());
+                continue;
+            }
+            Map<String, String> row = new HashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                if (!fields.get(i).isEmpty()) {
+                    row.put(header.get(i), fields.get(i));
+                }
+            }
+            rows.row(number, row);
+        }
+    }
+
+    private static final class CsvReader {
+        private final Reader in;
+        // Line the next record starts on.
+        private long line = 1;
+        private int pushedBack = -2;
+
+        CsvReader(Reader in) {
+            this.in = in;
+        }
+
+        /** The next record's fields, or null at the end of the input. An unclosed quote runs to the end. */
+        List<String> next() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        fields.add(field.toString());
+                        return fields;
+                    }
+                    if (c == '"') {
+                        int following = read();
+                        if (following != '"') {
+                            quoted = false;
+                            c = following;
+                            continue;
+                        }
+                    } else if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n' || c == -1) {
+                    if (c == '\r') {
+                        int following = read();
+                        if (following != '\n') {
+                            pushedBack = following;
+                        }
+                    }
+                    line++;
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (pushedBack != -2) {
+                int c = pushedBack;
+                pushedBack = -2;
+                return c;
+            }
+            return in.read();
+        }
+    }
+}
@@ -1,28 +1,53 @@
 package com.darius.project.api;
 import com.darius.project.domain.Trip;
-import com.darius.project.repository.Database.CustomerDB;
-import com.darius.project.repository.Database.ReservationDB;
-import com.darius.project.repository.Database.UserDB;
-import com.darius.project.repository.ORM.HibernateTripRepository;
-import com.darius.project.repository.ORM.HibernateUtil;
+import com.darius.project.repository.Database.Config;
+import com.darius.project.repository.Database.IdempotencyDB;
+import com.darius.project.repository.GenericRepos.TripRepository;
+import com.darius.project.service.AdmissionControl;
+import com.darius.project.service.BookingService;
 import com.darius.project.service.CustomerService;
+import com.darius.project.service.DataVersion;
+import com.darius.project.service.DbExecutor;
+import com.darius.project.service.RateLimiter;
 import com.darius.project.service.ReservationService;
+import com.darius.project.service.SeatHoldService;
+import com.darius.project.service.ServiceContainer;
+import com.darius.project.service.TripImport;
 import com.darius.project.service.TripService;
+import com.darius.project.service.TripSnapshot;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.darius.project.service.UserService;
+import com.darius.project.service.WaitlistService;
+import com.darius.project.websocket.TripWebSocketHandler;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 
 @SpringBootApplication
@@ -41,29 +66,106 @@ public class TripApiServer {
                         .allowedOriginPatterns("*")
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        .exposedHeaders(PageCursor.HEADER)
                         .allowCredentials(false);
             }
         };
     }
 
     @Bean
-    public TripService tripService() {
-        return new TripService(new HibernateTripRepository(HibernateUtil.getSessionFactory()));
+    public RequestAdmissionInterceptor requestAdmissionInterceptor(ServiceContainer services) {
+        return new RequestAdmissionInterceptor(
+                new RateLimiter<>(Config.getIntProperty("ratelimit.reservations.per.second", 10), Config.getIntProperty("ratelimit.reservations.burst", 20)),
+                new RateLimiter<>(Config.getIntProperty("ratelimit.login.per.second", 1), Config.getIntProperty("ratelimit.login.burst", 5)),
+                services.getAdmissionControl());
     }
 
     @Bean
-    public UserService userService() {
-        return new UserService(new UserDB());
+    public WebMvcConfigurer admissionConfigurer(RequestAdmissionInterceptor interceptor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(interceptor).addPathPatterns("/api/**").excludePathPatterns("/api/metrics");
+            }
+        };
     }
 
+    // Only the streamed exports wait longer than spring.mvc.async.request-timeout (see ExportTimeout).
     @Bean
-    public ReservationService reservationService() {
-        return new ReservationService(new ReservationDB());
+    public WebMvcConfigurer exportConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.registerCallableInterceptors(new ExportTimeout(Config.getIntProperty("export.timeout.ms", 600000)));
+            }
+        };
     }
 
+    @Bean(destroyMethod = "close")
+    public ServiceContainer serviceContainer() {
+        return new ServiceContainer("rest-api");
+    }
+
+    // A bulk import is announced to WebSocket clients once, with the number of trips stored, not trip by trip.
     @Bean
-    public CustomerService customerService() {
-        return new CustomerService(new CustomerDB());
+    public TripService tripService(ServiceContainer services, TripWebSocketHandler webSocketHandler) {
+        TripService tripService = services.getTripService();
+        tripService.addTripsImportedListener(count -> webSocketHandler.broadcastMessage("TRIP_UPDATE", Map.of("action", "IMPORTED", "count", count), ""));
+        return tripService;
+    }
+
+    @Bean
+    public UserService userService(ServiceContainer services) {
+        return services.getUserService();
+    }
+
+    @Bean
+    public ReservationService reservationService(ServiceContainer services) {
+        return services.getReservationService();
+    }
+
+    @Bean
+    public CustomerService customerService(ServiceContainer services) {
+        return services.getCustomerService();
+    }
+
+    @Bean
+    public BookingService bookingService(ServiceContainer services) {
+        return services.getBookingService();
+    }
+
+    // Owned by the ServiceContainer, which shuts it down.
+    @Bean(destroyMethod = "")
+    public DbExecutor dbExecutor(ServiceContainer services) {
+        return services.getDbExecutor();
+    }
+
+    @Bean(destroyMethod = "")
+    public DataVersion dataVersion(ServiceContainer services) {
+        return services.getDataVersion();
+    }
+
+    // Closed by the container, not on its own.
+    @Bean(destroyMethod = "")
+    public SeatHoldService seatHoldService(ServiceContainer services) {
+        return services.getSeatHoldService();
+    }
+
+    @Bean(destroyMethod = "close")
+    public IdempotencyStore<ReservationController.ReservationResponse> reservationIdempotencyStore(ObjectMapper objectMapper, DbExecutor dbExecutor) {
+        return new IdempotencyStore<>("POST /api/reservations", ReservationController.ReservationResponse.class, objectMapper,
+                new IdempotencyDB(), dbExecutor.getExecutor(), Config.getIntProperty("idempotency.ttl.ms", 86400000),
+                Config.getIntProperty("idempotency.max.entries", 10000));
+    }
+
+    // Promotions are pushed to every WebSocket client; the customer's client recognizes its entry id.
+    @Bean(destroyMethod = "")
+    public WaitlistService waitlistService(ServiceContainer services, TripWebSocketHandler webSocketHandler) {
+        WaitlistService waitlistService = services.getWaitlistService();
+        waitlistService.addPromotionListener((entry, reservation) -> webSocketHandler.broadcastMessage("WAITLIST_PROMOTED",
+                Map.of("entryId", entry.getId(), "tripId", entry.getTripId(), "reservationId", reservation.getId(),
+                        "customerName", entry.getCustomerName(), "tickets", entry.getTickets()), ""));
+        return waitlistService;
     }
 
 }
@@ -73,97 +175,280 @@ public class TripApiServer {
 @RequestMapping("/api/trips")
 class TripController {
     private static final Logger LOGGER = LoggerFactory.getLogger(TripController.class);
+    private static final String TRIPS_JSON = "api.trips.json";
+    private static final RowExport<Trip> TRIP_EXPORT = new RowExport<>("trips",
+            new String[]{"id", "attractionName", "transportCompany", "departureTime", "price", "availableSeats"},
+            trip -> new Object[]{trip.getId(), trip.getAttractionName(), trip.getTransportCompany(), trip.getDepartureTime(), trip.getPrice(), trip.getAvailableSeats()});
     private final TripService tripService;
+    private final BookingService bookingService;
+    private final DataVersion dataVersion;
+    private final ObjectMapper objectMapper;
+    private final DbExecutor dbExecutor;
 
-    public TripController(TripService tripService) {
+    public TripController(TripService tripService, BookingService bookingService, DataVersion dataVersion, ObjectMapper objectMapper, DbExecutor dbExecutor) {
         this.tripService = tripService;
+        this.bookingService = bookingService;
+        this.dataVersion = dataVersion;
+        this.objectMapper = objectMapper;
+        this.dbExecutor = dbExecutor;
         LOGGER.info("TripController initialized");
     }
 
+    // GET endpoints are tagged with the data version (see ETags); a matching If-None-Match is answered 304 right away.
+    // Other endpoints run their database work on the DbExecutor (see DbCalls), off the request thread. Export and
+    // import last as long as the client's transfer, so they would hold a database thread just as long: the export
+    // streams on Spring's async executor and the import reads its upload on the request thread.
+
     // Retrieve a single Trip by ID
     @GetMapping("/{id}")
-    public ResponseEntity<Trip> getTripById(@PathVariable Integer id) {
-        LOGGER.info("Retrieving trip with ID: {}", id);
-        Trip trip = tripService.findById(id);
-        if (trip == null) {
-            LOGGER.info("Trip with ID: {} not found", id);
-            return ResponseEntity.notFound().build();
+    public CompletableFuture<ResponseEntity<Trip>> getTripById(@PathVariable Integer id, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = dataVersion.tag();
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return CompletableFuture.completedFuture(ETags.notModified(etag));
         }
-        return new ResponseEntity<>(trip, HttpStatus.OK);
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("Retrieving trip with ID: {}", id);
+            Trip trip = tripService.findById(id);
+            if (trip == null) {
+                LOGGER.info("Trip with ID: {} not found", id);
+                return ResponseEntity.notFound().build();
+            }
+            return ETags.tagged(new ResponseEntity<>(trip, HttpStatus.OK), etag);
+        });
     }
 
-    // Retrieve all Trips
+    // Retrieve all Trips; the JSON is serialized once per catalog snapshot and shared by every request.
+    // With limit, after or sort, one page is read from the database instead (see PageCursor); sort is id, price or departure.
     @GetMapping
-    public ResponseEntity<List<Trip>> getAllTrips() {
-        List<Trip> trips = tripService.findAll();
-        return new ResponseEntity<>(trips, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<?>> getAllTrips(@RequestParam(required = false) String after, @RequestParam(required = false) Integer limit,
+                                                            @RequestParam(required = false) String sort, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = dataVersion.tag();
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return CompletableFuture.completedFuture(ETags.notModified(etag));
+        }
+        if (after != null || limit != null || sort != null) {
+            return DbCalls.offload(dbExecutor, () -> ETags.tagged(getTripPage(after, limit, sort == null ? "id" : sort), etag));
+        }
+        return DbCalls.offload(dbExecutor, () -> {
+            TripSnapshot snapshot = tripService.getSnapshot();
+            byte[] json = snapshot.encoded(TRIPS_JSON, trips -> {
+                try {
+                    return objectMapper.writeValueAsBytes(trips);
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return ETags.tagged(ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json), etag);
+        });
     }
 
-    // Create a new Trip
-    @PostMapping("/{id}")
-    public ResponseEntity<Trip> createTrip(@PathVariable Integer id, @RequestBody Trip trip) {
-        LOGGER.info("REST request to save Trip with id: {}", id);
+    private ResponseEntity<List<Trip>> getTripPage(String after, Integer limit, String sort) {
+        LOGGER.info("REST request for a page of trips by {}", sort);
         try {
-            trip.setId(id);
-            tripService.save(id, trip);
-            return ResponseEntity
-                    .status(HttpStatus.CREATED)
-                    .body(trip);
-        } catch (Exception e) {
-            LOGGER.error("Error creating trip", e);
+            TripRepository.Order order = TripRepository.Order.valueOf(sort.toUpperCase());
+            PageCursor cursor = PageCursor.decode(after, order.name());
+            int pageSize = PageCursor.limit(limit);
+            List<Trip> trips = tripService.findPage(order, cursor == null ? null : cursor.getKey(), cursor == null ? null : cursor.getId(), pageSize + 1);
+            return PageCursor.respond(trips, pageSize, trip -> new PageCursor(order.name(), trip.getId(), switch (order) {
+                case ID -> "";
+                case PRICE -> Double.toString(trip.getPrice());
+                case DEPARTURE -> trip.getDepartureTime();
+            }));
+        } catch (IllegalArgumentException e) {
+            LOGGER.info("Invalid trip page request: {}", e.getMessage());
             return ResponseEntity.badRequest().build();
         }
     }
 
-    // Update an existing Trip
-    @PutMapping("/{id}")
-    public ResponseEntity<Trip> updateTrip(@PathVariable Integer id, @RequestBody Trip trip) {
-        LOGGER.info("REST request to update Trip with id: {}", id);
-        try {
-            trip.setId(id);
-            tripService.update(id, trip);
-            return ResponseEntity.ok(trip);
-        } catch (IllegalArgumentException e) {
-            LOGGER.error("Trip not found", e);
-            return  ResponseEntity.notFound().build();
-        } catch (Exception e) {
-            LOGGER.error("Error updating trip", e);
+    // Stream every Trip as NDJSON or CSV (see RowExport), read in chunks so the table is never held in memory
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTrips(@RequestParam(required = false) String format) {
+        LOGGER.info("REST request to export all trips as {}", format == null ? "ndjson" : format);
+        return TRIP_EXPORT.respond(format, objectMapper, tripService::exportAll);
+    }
+
+    // Bulk-load Trips from an NDJSON or CSV upload in the export's format, stored while it is read (see TripImport).
+    // The format is taken from format, else from the Content-Type; the report lists the rows that were rejected.
+    @PostMapping("/import")
+    public ResponseEntity<TripImport.Report> importTrips(@RequestParam(required = false) String format, HttpServletRequest request) throws IOException {
+        boolean csv = format == null ? request.getContentType() != null && request.getContentType().startsWith("text/csv") : format.equalsIgnoreCase("csv");
+        if (format != null && !csv && !format.equalsIgnoreCase("ndjson")) {
             return ResponseEntity.badRequest().build();
         }
+        LOGGER.info("REST request to import trips as {}", csv ? "csv" : "ndjson");
+        TripImport tripImport = tripService.startImport();
+        TripImport.Report report;
+        try (Reader reader = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8)) {
+            if (csv) {
+                RowImport.readCsv(reader, (line, fields) -> {
+                    try {
+                        tripImport.add(line, tripFromCsv(fields));
+                    } catch (IllegalArgumentException e) {
+                        tripImport.reject(line, e.getMessage());
+                    }
+                }, tripImport::reject);
+            } else {
+                RowImport.readNdjson(reader, objectMapper.readerFor(Trip.class), tripImport::add, tripImport::reject);
+            }
+        } finally {
+            // Chunks stored before a broken upload stay stored, so they are announced either way.
+            report = tripImport.finish();
+        }
+        return ResponseEntity.ok(report);
     }
 
-    // Delete a Trip
-    @DeleteMapping("/{id}")
-    public ResponseEntity<Map<String,String>> deleteTrip(@PathVariable Integer id) {
-        LOGGER.info("REST request to delete Trip with id: {}", id);
+    private static Trip tripFromCsv(Map<String, String> fields) {
+        return new Trip(csvNumber(fields, "id", Integer::valueOf, null), fields.get("attractionName"), fields.get("transportCompany"),
+                fields.get("departureTime"), csvNumber(fields, "price", Double::valueOf, 0.0), csvNumber(fields, "availableSeats", Integer::valueOf, 0));
+    }
+
+    private static <N extends Number> N csvNumber(Map<String, String> fields, String column, Function<String, N> parser, N missing) {
+        String value = fields.get(column);
+        if (value == null) {
+            return missing;
+        }
         try {
-            tripService.delete(id);
-            Map<String,String> response = Map.of("message", "Trip deleted successfully with id: " + id);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            LOGGER.error("Error deleting trip", e);
-            return ResponseEntity
-                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("message", "Error deleting trip with id: " + id));
+            return parser.apply(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " is not a number: " + value);
         }
     }
 
+    // Create a new Trip
+    @PostMapping("/{id}")
+    public CompletableFuture<ResponseEntity<Trip>> createTrip(@PathVariable Integer id, @RequestBody Trip trip) {
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("REST request to save Trip with id: {}", id);
+            try {
+                trip.setId(id);
+                tripService.save(id, trip);
+                return ResponseEntity
+                        .status(HttpStatus.CREATED)
+                        .body(trip);
+            } catch (Exception e) {
+                LOGGER.error("Error creating trip", e);
+                return ResponseEntity.badRequest().build();
+            }
+        });
+    }
+
+    // Update an existing Trip
+    @PutMapping("/{id}")
+    public CompletableFuture<ResponseEntity<Trip>> updateTrip(@PathVariable Integer id, @RequestBody Trip trip) {
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("REST request to update Trip with id: {}", id);
+            try {
+                trip.setId(id);
+                tripService.update(id, trip);
+                return ResponseEntity.ok(trip);
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("Trip not found", e);
+                return  ResponseEntity.notFound().build();
+            } catch (Exception e) {
+                LOGGER.error("Error updating trip", e);
+                return ResponseEntity.badRequest().build();
+            }
+        });
+    }
+
+    // Switch a Trip into or out of flash-sale mode (bookings queue per trip instead of competing with other trips)
+    @PutMapping("/{id}/flash-mode")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> setFlashMode(@PathVariable Integer id, @RequestParam boolean enabled) {
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("REST request to set flash-sale mode of Trip with id: {} to {}", id, enabled);
+            if (tripService.findById(id) == null) {
+                return ResponseEntity.notFound().build();
+            }
+            bookingService.setFlashMode(id, enabled);
+            return ResponseEntity.ok(Map.of("tripId", id, "flashMode", bookingService.isFlashMode(id)));
+        });
+    }
+
+    // Delete a Trip
+    @DeleteMapping("/{id}")
+    public CompletableFuture<ResponseEntity<Map<String,String>>> deleteTrip(@PathVariable Integer id) {
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("REST request to delete Trip with id: {}", id);
+            try {
+                tripService.delete(id);
+                Map<String,String> response = Map.of("message", "Trip deleted successfully with id: " + id);
+                return ResponseEntity.ok(response);
+            } catch (Exception e) {
+                LOGGER.error("Error deleting trip", e);
+                return ResponseEntity
+                        .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Map.of("message", "Error deleting trip with id: " + id));
+            }
+        });
+    }
+
     @GetMapping("/search/attraction")
-    public ResponseEntity<List<Trip>> searchTripsByAttraction(@RequestParam String attraction) {
-        LOGGER.info("REST request to find trips containing attraction: {}", attraction);
-        List<Trip> trips = tripService.findAllByAttractionContaining(attraction);
-        return new ResponseEntity<>(trips, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<List<Trip>>> searchTripsByAttraction(@RequestParam String attraction, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = dataVersion.tag();
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return CompletableFuture.completedFuture(ETags.notModified(etag));
+        }
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("REST request to find trips containing attraction: {}", attraction);
+            List<Trip> trips = tripService.findAllByAttractionContaining(attraction);
+            return ETags.tagged(new ResponseEntity<>(trips, HttpStatus.OK), etag);
+        });
     }
 
     // Search Trips by attraction and time range
     @GetMapping("/search/time")
-    public ResponseEntity<List<Trip>> searchTripsByAttractionAndTime(
+    public CompletableFuture<ResponseEntity<List<Trip>>> searchTripsByAttractionAndTime(
             @RequestParam String attraction,
             @RequestParam String startTime,
-            @RequestParam String endTime) {
-        LOGGER.info("REST request to find trips by attraction and time range");
-        List<Trip> trips = tripService.findByAttractionAndTime(attraction, startTime, endTime);
-        return new ResponseEntity<>(trips, HttpStatus.OK);
+            @RequestParam String endTime,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = dataVersion.tag();
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return CompletableFuture.completedFuture(ETags.notModified(etag));
+        }
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("REST request to find trips by attraction and time range");
+            List<Trip> trips = tripService.findByAttractionAndTime(attraction, startTime, endTime);
+            return ETags.tagged(new ResponseEntity<>(trips, HttpStatus.OK), etag);
+        });
+    }
+
+}
+
+@CrossOrigin(origins = "http://localhost:3000")
+@RestController
+@RequestMapping("/api/metrics")
+class MetricsController {
+    private final RequestAdmissionInterceptor admissionInterceptor;
+    private final AdmissionControl admissionControl;
+    private final DbExecutor dbExecutor;
+
+    public MetricsController(RequestAdmissionInterceptor admissionInterceptor, ServiceContainer services) {
+        this.admissionInterceptor = admissionInterceptor;
+        this.admissionControl = services.getAdmissionControl();
+        this.dbExecutor = services.getDbExecutor();
     }
 
+    // Rate limiting and admission counters since startup, and the DbExecutor: busy threads and queued tasks show how
+    // saturated it is now, refused and timed-out tasks how often it has been too slow.
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("reservationsRateLimited", admissionInterceptor.getReservationLimiter().getRejected());
+        metrics.put("loginsRateLimited", admissionInterceptor.getLoginLimiter().getRejected());
+        metrics.put("admitted", admissionControl.getAdmitted());
+        metrics.put("admissionQueued", admissionControl.getQueued());
+        metrics.put("admissionRejected", admissionControl.getRejected());
+        metrics.put("inFlight", admissionControl.getInFlight());
+        metrics.put("waiting", admissionControl.getWaiting());
+        metrics.put("dbThreads", dbExecutor.getThreads());
+        metrics.put("dbActive", dbExecutor.getActive());
+        metrics.put("dbQueued", dbExecutor.getQueued());
+        metrics.put("dbQueueCapacity", dbExecutor.getQueueCapacity());
+        metrics.put("dbCompleted", dbExecutor.getCompleted());
+        metrics.put("dbRejected", dbExecutor.getRejected());
+        metrics.put("dbTimedOut", dbExecutor.getTimedOut());
+        metrics.put("dbStillRunning", dbExecutor.getStillRunning());
+        return ResponseEntity.ok(metrics);
+    }
 }
@@ -1,6 +1,7 @@
 package com.darius.project.api;
 
 import com.darius.project.domain.User;
+import com.darius.project.service.DbExecutor;
 import com.darius.project.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,6 +11,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @CrossOrigin(origins = "http://localhost:3000")
 @RestController
@@ -17,101 +19,125 @@ import java.util.Map;
 public class UserController {
     private static final Logger LOGGER = LoggerFactory.getLogger(UserController.class);
     private final UserService userService;
+    private final DbExecutor dbExecutor;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, DbExecutor dbExecutor) {
         this.userService = userService;
+        this.dbExecutor = dbExecutor;
     }
 
+    // Database work runs on the DbExecutor (see DbCalls), off the request thread.
+
     @PostMapping("/login")
-    public ResponseEntity<LoginResponse> login(@RequestBody LoginRequest request) {
-        LOGGER.info("Login attempt for username: {}", request.getUsername());
-
-        try {
-            boolean isValid = userService.checkLogin(request.getUsername(), request.getPassword());
-            if (isValid) {
-                User user = userService.findByUsername(request.getUsername());
-                boolean isAdmin = "Admin".equals(user.getUsername()) && "4862".equals(user.getPassword());
-
-                LoginResponse response = new LoginResponse(
-                        true,
-                        "Login successful",
-                        user.getId(),
-                        user.getUsername(),
-                        isAdmin
-                );
-                return ResponseEntity.ok(response);
-            } else {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                        .body(new LoginResponse(false, "Invalid credentials", null, null, false));
+    public CompletableFuture<ResponseEntity<LoginResponse>> login(@RequestBody LoginRequest request) {
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("Login attempt for username: {}", request.getUsername());
+
+            try {
+                boolean isValid = userService.checkLogin(request.getUsername(), request.getPassword());
+                if (isValid) {
+                    User user = userService.findByUsername(request.getUsername());
+                    boolean isAdmin = "Admin".equals(user.getUsername()) && "4862".equals(user.getPassword());
+
+                    LoginResponse response = new LoginResponse(
+                            true,
+                            "Login successful",
+                            user.getId(),
+                            user.getUsername(),
+                            isAdmin
+                    );
+                    return ResponseEntity.ok(response);
+                } else {
+                    return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                            .body(new LoginResponse(false, "Invalid credentials", null, null, false));
+                }
+            } catch (Exception e) {
+                LOGGER.error("Login error: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(new LoginResponse(false, "Login failed", null, null, false));
             }
-        } catch (Exception e) {
-            LOGGER.error("Login error: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(new LoginResponse(false, "Login failed", null, null, false));
-        }
+        });
     }
 
     @GetMapping("/users")
-    public ResponseEntity<List<User>> getAllUsers() {
-        try {
-            List<User> users = userService.findAll();
-            return ResponseEntity.ok(users);
-        } catch (Exception e) {
-            LOGGER.error("Error fetching users: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+    public CompletableFuture<ResponseEntity<List<User>>> getAllUsers(@RequestParam(required = false) String after, @RequestParam(required = false) Integer limit) {
+        return DbCalls.offload(dbExecutor, () -> {
+            try {
+                if (after != null || limit != null) {
+                    PageCursor cursor = PageCursor.decode(after, "users");
+                    int pageSize = PageCursor.limit(limit);
+                    List<User> users = userService.findPage(cursor == null ? null : cursor.getId(), pageSize + 1);
+                    return PageCursor.respond(users, pageSize, user -> new PageCursor("users", user.getId(), ""));
+                }
+                List<User> users = userService.findAll();
+                return ResponseEntity.ok(users);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            } catch (Exception e) {
+                LOGGER.error("Error fetching users: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            }
+        });
     }
 
     @PostMapping("/users")
-    public ResponseEntity<CreateUserResponse> createUser(@RequestBody CreateUserRequest request) {
-        try {
-            User user = new User(request.getId(), request.getUsername(), request.getPassword());
-            userService.save(request.getId(), user);
-            return ResponseEntity.status(HttpStatus.CREATED)
-                    .body(new CreateUserResponse(true, "User created successfully", user));
-        } catch (Exception e) {
-            LOGGER.error("Error creating user: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(new CreateUserResponse(false, "Error creating user: " + e.getMessage(), null));
-        }
+    public CompletableFuture<ResponseEntity<CreateUserResponse>> createUser(@RequestBody CreateUserRequest request) {
+        return DbCalls.offload(dbExecutor, () -> {
+            try {
+                User user = new User(request.getId(), request.getUsername(), request.getPassword());
+                userService.save(request.getId(), user);
+                return ResponseEntity.status(HttpStatus.CREATED)
+                        .body(new CreateUserResponse(true, "User created successfully", user));
+            } catch (Exception e) {
+                LOGGER.error("Error creating user: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(new CreateUserResponse(false, "Error creating user: " + e.getMessage(), null));
+            }
+        });
     }
 
     @PutMapping("/users/{id}")
-    public ResponseEntity<UpdateUserResponse> updateUser(@PathVariable Integer id, @RequestBody UpdateUserRequest request) {
-        try {
-            User user = new User(id, request.getUsername(), request.getPassword());
-            userService.update(id, user);
-            return ResponseEntity.ok(new UpdateUserResponse(true, "User updated successfully", user));
-        } catch (Exception e) {
-            LOGGER.error("Error updating user: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(new UpdateUserResponse(false, "Error updating user: " + e.getMessage(), null));
-        }
+    public CompletableFuture<ResponseEntity<UpdateUserResponse>> updateUser(@PathVariable Integer id, @RequestBody UpdateUserRequest request) {
+        return DbCalls.offload(dbExecutor, () -> {
+            try {
+                User user = new User(id, request.getUsername(), request.getPassword());
+                userService.update(id, user);
+                return ResponseEntity.ok(new UpdateUserResponse(true, "User updated successfully", user));
+            } catch (Exception e) {
+                LOGGER.error("Error updating user: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(new UpdateUserResponse(false, "Error updating user: " + e.getMessage(), null));
+            }
+        });
     }
 
     @DeleteMapping("/users/{id}")
-    public ResponseEntity<Map<String, String>> deleteUser(@PathVariable Integer id) {
-        try {
-            userService.delete(id);
-            return ResponseEntity.ok(Map.of("message", "User deleted successfully"));
-        } catch (Exception e) {
-            LOGGER.error("Error deleting user: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("message", "Error deleting user"));
-        }
+    public CompletableFuture<ResponseEntity<Map<String, String>>> deleteUser(@PathVariable Integer id) {
+        return DbCalls.offload(dbExecutor, () -> {
+            try {
+                userService.delete(id);
+                return ResponseEntity.ok(Map.of("message", "User deleted successfully"));
+            } catch (Exception e) {
+                LOGGER.error("Error deleting user: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Map.of("message", "Error deleting user"));
+            }
+        });
     }
 
     @GetMapping("/users/search")
-    public ResponseEntity<List<User>> searchUsers(@RequestParam String username) {
-        LOGGER.info("Searching users with username containing: {}", username);
-        try {
-            List<User> users = userService.findAll(); // For now, return all users filtered by username
-            // You can implement a proper search method in UserService if needed
-            return ResponseEntity.ok(users);
-        } catch (Exception e) {
-            LOGGER.error("Error searching users: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+    public CompletableFuture<ResponseEntity<List<User>>> searchUsers(@RequestParam String username) {
+        return DbCalls.offload(dbExecutor, () -> {
+            LOGGER.info("Searching users with username containing: {}", username);
+            try {
+                List<User> users = userService.findAll(); // For now, return all users filtered by username
+                // You can implement a proper search method in UserService if needed
+                return ResponseEntity.ok(users);
+            } catch (Exception e) {
+                LOGGER.error("Error searching users: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            }
+        });
     }
 
     public static class LoginRequest {
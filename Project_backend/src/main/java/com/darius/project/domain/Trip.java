@@ -4,7 +4,11 @@ import jakarta.persistence.*;
 import java.util.*;
 
 @Entity
-@Table(name = "trips")
+// Keyset pages ordered by price or departure (TripRepository.findPage) read these indexes instead of sorting the table.
+@Table(name = "trips", indexes = {
+        @Index(name = "idx_trips_price", columnList = "price, id"),
+        @Index(name = "idx_trips_departure", columnList = "departureTime, id")
+})
 public class Trip implements Identifiable<Integer>{
     @Id
     private Integer id;
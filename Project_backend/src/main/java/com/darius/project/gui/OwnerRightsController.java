@@ -13,6 +13,8 @@ import java.util.List;
 
 public class OwnerRightsController {
     private static final Logger LOGGER = LoggerFactory.getLogger(OwnerRightsController.class);
+    // FX thread only: replies to superseded trip searches are ignored.
+    private long tripSearchSequence = 0;
 
     @FXML private Button ExitButton;
     @FXML private Button addUserBtn;
@@ -45,7 +47,7 @@ public class OwnerRightsController {
     public void initialize() {
         setupClientMessageListener();
         Client.getInstance().sendMessage("GET_USERS");
-        Client.getInstance().sendMessage("GET_TRIPS");
+        Client.getInstance().sendMessage("GET_CATALOG");
 
         ExitButton.setOnAction(e -> handleExit());
         addUserBtn.setOnAction(e -> handleAddUser());
@@ -83,9 +85,9 @@ public class OwnerRightsController {
 
         TripAttractionField.textProperty().addListener((obs, oldVal, newVal) -> {
             if (newVal != null && !newVal.trim().isEmpty()) {
-                Client.getInstance().sendMessage("SEARCH_TRIPS#" + newVal);
+                searchTrips("SEARCH_TRIPS#" + newVal);
             } else {
-                Client.getInstance().sendMessage("GET_TRIPS");
+                searchTrips("GET_TRIPS");
             }
         });
     }
@@ -95,16 +97,13 @@ public class OwnerRightsController {
             if (message.equals("UPDATE_USERS")) {
                 Platform.runLater(() -> Client.getInstance().sendMessage("GET_USERS"));
 
-            } else if (message.equals("UPDATE_TRIPS")) {
-                Platform.runLater(() -> Client.getInstance().sendMessage("GET_TRIPS"));
-
             } else if (message.startsWith("USERS#")) {
                 String userData = message.substring("USERS#".length());
                 Platform.runLater(() -> updateUserList(userData));
 
             } else if (message.startsWith("TRIPS#")) {
                 String tripData = message.substring("TRIPS#".length());
-                Platform.runLater(() -> updateTripList(tripData));
+                Platform.runLater(() -> updateTripList(parseTripsFromString(tripData)));
 
             } else if (message.startsWith("USER_") && message.contains("SUCCESS")) {
                 Platform.runLater(() -> {
@@ -126,9 +125,10 @@ public class OwnerRightsController {
 
             } else if (message.startsWith("SEARCH_RESULTS#")) {
                 String results = message.substring("SEARCH_RESULTS#".length());
-                Platform.runLater(() -> updateTripList(results));
+                Platform.runLater(() -> updateTripList(parseTripsFromString(results)));
             }
         });
+        Client.getInstance().setOnTripsReceivedListener((kind, trips) -> updateTripList(trips));
     }
 
     private void showAlert(Alert.AlertType type, String message) {
@@ -141,8 +141,7 @@ public class OwnerRightsController {
         UserListCollection.getItems().setAll(users);
     }
 
-    private void updateTripList(String tripData) {
-        List<Trip> trips = parseTripsFromString(tripData);
+    private void updateTripList(List<Trip> trips) {
         TripListCollection.getItems().setAll(trips);
     }
 
@@ -357,12 +356,26 @@ public class OwnerRightsController {
                 showAlert(Alert.AlertType.WARNING, "Please enter an attraction name to search");
                 return;
             }
-            Client.getInstance().sendMessage("SEARCH_TRIPS#" + attraction);
+            searchTrips("SEARCH_TRIPS#" + attraction);
         } catch (Exception ex) {
             showAlert(Alert.AlertType.ERROR, "Error searching for trip: " + ex.getMessage());
         }
     }
 
+    private void searchTrips(String query) {
+        long search = ++tripSearchSequence;
+        Client.getInstance().requestTrips(query).whenComplete((trips, error) -> Platform.runLater(() -> {
+            if (search != tripSearchSequence) {
+                return;
+            }
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Error searching for trip: " + error.getMessage());
+                return;
+            }
+            updateTripList(trips);
+        }));
+    }
+
     private void handleUpdateTrip() {
         try {
             validateTripFields();
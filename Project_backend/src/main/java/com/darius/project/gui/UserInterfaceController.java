@@ -19,6 +19,8 @@ public class UserInterfaceController {
     @FXML private Button MakeReservationBtn, UserExitBtn;
 
     private int requestedTickets = 0;
+    // FX thread only: replies to superseded searches are ignored.
+    private long searchSequence = 0;
 
     public void initialize() {
         LOGGER.info("Setting up client message listener");
@@ -47,21 +49,19 @@ public class UserInterfaceController {
         MakeReservationBtn.setOnAction(e -> handleMakeReservation());
 
         LOGGER.info("Requesting initial trip data from server");
-        Client.getInstance().sendMessage("GET_TRIPS");
+        Client.getInstance().sendMessage("GET_CATALOG");
     }
 
     private void setupClientMessageListener() {
         Client.getInstance().setOnMessageReceivedListener(message -> {
             LOGGER.debug("Received message from server: {}", message);
 
-            if (message.equals("UPDATE_TRIPS")) {
-                Platform.runLater(() -> Client.getInstance().sendMessage("GET_TRIPS"));
-            } else if (message.startsWith("TRIPS#")) {
+            if (message.startsWith("TRIPS#")) {
                 String tripData = message.substring("TRIPS#".length());
-                Platform.runLater(() -> updateTripList(tripData));
+                Platform.runLater(() -> updateTripList(parseTripsFromString(tripData)));
             } else if (message.startsWith("SEARCH_RESULTS#")) {
                 String results = message.substring("SEARCH_RESULTS#".length());
-                Platform.runLater(() -> updateFilteredAttractions(results));
+                Platform.runLater(() -> updateFilteredAttractions(parseTripsFromString(results)));
             } else if (message.equals("RESERVATION_SUCCESS")) {
                 Platform.runLater(() -> {
                     showAlert(Alert.AlertType.INFORMATION, "Reservation successful!");
@@ -74,6 +74,13 @@ public class UserInterfaceController {
                 Platform.runLater(() -> showAlert(Alert.AlertType.ERROR, "Reservation failed: " + reason));
             }
         });
+        Client.getInstance().setOnTripsReceivedListener((kind, trips) -> {
+            if (kind.equals("CATALOG") || kind.equals("TRIPS")) {
+                updateTripList(trips);
+            } else {
+                updateFilteredAttractions(trips);
+            }
+        });
     }
 
     private void showAlert(Alert.AlertType type, String message) {
@@ -81,15 +88,13 @@ public class UserInterfaceController {
         alert.showAndWait();
     }
 
-    private void updateTripList(String tripData) {
-        List<Trip> trips = parseTripsFromString(tripData);
+    private void updateTripList(List<Trip> trips) {
         AttractionListCollection.getItems().setAll(trips);
         LOGGER.info("Trip list updated with {} trips", trips.size());
         filterAttractions();
     }
 
-    private void updateFilteredAttractions(String tripData) {
-        List<Trip> trips = parseTripsFromString(tripData);
+    private void updateFilteredAttractions(List<Trip> trips) {
         FilteredAttractions.getItems().setAll(trips);
         LOGGER.info("Filtered attractions list updated with {} trips", trips.size());
     }
@@ -157,16 +162,31 @@ public class UserInterfaceController {
         String endTime = TimeEndField.getText().trim();
 
         if (!attraction.isEmpty() && (startTime.isEmpty() || endTime.isEmpty())) {
-            Client.getInstance().sendMessage("SEARCH_TRIPS#" + attraction);
+            searchTrips("SEARCH_TRIPS#" + attraction);
             return;
         }
         if (!attraction.isEmpty()) {
-            Client.getInstance().sendMessage("SEARCH_TRIPS#" + attraction + "#" + startTime + "#" + endTime);
+            searchTrips("SEARCH_TRIPS#" + attraction + "#" + startTime + "#" + endTime);
             return;
         }
+        searchSequence++;
         FilteredAttractions.getItems().clear();
     }
 
+    private void searchTrips(String query) {
+        long search = ++searchSequence;
+        Client.getInstance().requestTrips(query).whenComplete((trips, error) -> Platform.runLater(() -> {
+            if (search != searchSequence) {
+                return;
+            }
+            if (error != null) {
+                LOGGER.error("Error searching trips: {}", error.getMessage());
+                return;
+            }
+            updateFilteredAttractions(trips);
+        }));
+    }
+
     private void handleMakeReservation() {
         Trip selectedTrip = FilteredAttractions.getSelectionModel().getSelectedItem();
         if (selectedTrip == null) {
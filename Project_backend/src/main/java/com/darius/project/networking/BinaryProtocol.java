@@ -0,0 +1,348 @@
+package com.darius.project.networking;
+import com.darius.project.domain.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Length-prefixed binary framing, negotiated per connection with the text line {@code PROTOCOL#BINARY}.
+ * The server answers with the same line and both sides switch to frames right after it.
+ * <p>
+ * Frame: {@code int length} (big-endian, bytes after this field), {@code byte opcode}, payload.
+ * In payloads, {@code var} is an unsigned LEB128 varint and {@code str} is a var byte count followed by UTF-8.
+ * <ul>
+ *   <li>{@link #OP_COMMAND}: var field count, then the str fields of a text command (command name first,
+ *       optionally preceded by an {@code @<request id>} field, as in the text protocol)</li>
+ *   <li>{@link #OP_MESSAGE}: one str message, for replies and notifications without a bulk payload</li>
+ *   <li>{@link #OP_TRIPS} / {@link #OP_SEARCH_RESULTS}: var count, var n + n str transport companies,
+ *       then trips as var id, str attraction, var index into the companies, str departure,
+ *       var price in cents, var seats</li>
+ *   <li>{@link #OP_USERS}: var count, then users as var id, str username, str password</li>
+ *   <li>{@link #OP_RESERVATION}: var id, var tripId, var customerId, var tickets</li>
+ *   <li>{@link #OP_CATALOG}: var catalog version, then the same body as {@link #OP_TRIPS}</li>
+ *   <li>{@link #OP_TRIP_ADDED} / {@link #OP_TRIP_CHANGED}: var catalog version, then one trip as
+ *       var id, str attraction, str transport company, str departure, var price in cents, var seats</li>
+ *   <li>{@link #OP_TRIP_REMOVED}: var catalog version, var trip id</li>
+ *   <li>{@link #OP_REPLY}: str request id, then the opcode and payload of the reply to that tagged request</li>
+ * </ul>
+ */
+public final class BinaryProtocol {
+    public static final String SWITCH_COMMAND = "PROTOCOL#BINARY";
+
+    public static final byte OP_COMMAND = 0x01;
+    public static final byte OP_MESSAGE = 0x10;
+    public static final byte OP_TRIPS = 0x11;
+    public static final byte OP_SEARCH_RESULTS = 0x12;
+    public static final byte OP_USERS = 0x13;
+    public static final byte OP_RESERVATION = 0x14;
+    public static final byte OP_CATALOG = 0x15;
+    public static final byte OP_TRIP_ADDED = 0x16;
+    public static final byte OP_TRIP_CHANGED = 0x17;
+    public static final byte OP_TRIP_REMOVED = 0x18;
+    public static final byte OP_REPLY = 0x20;
+
+    private static final int HEADER_BYTES = 4;
+    private static final int TRIP_BYTES_ESTIMATE = 64;
+
+    private BinaryProtocol() {}
+
+    public static final class Frame {
+        private final byte opcode;
+        private final byte[] payload;
+        private final String requestId;
+
+        public Frame(byte opcode, byte[] payload) {
+            this(opcode, payload, null);
+        }
+
+        public Frame(byte opcode, byte[] payload, String requestId) {
+            this.opcode = opcode;
+            this.payload = payload;
+            this.requestId = requestId;
+        }
+
+        public byte getOpcode() { return opcode; }
+        public byte[] getPayload() { return payload; }
+        /** Set on frames unwrapped from an {@link #OP_REPLY}. */
+        public String getRequestId() { return requestId; }
+
+        public DataInputStream payloadStream() {
+            return new DataInputStream(new ByteArrayInputStream(payload));
+        }
+    }
+
+    // ---- encoding ----
+
+    public static ByteBuffer encodeCommand(String[] fields) {
+        return encode(OP_COMMAND, 16 * fields.length, out -> {
+            writeVarInt(out, fields.length);
+            for (String field : fields) {
+                writeString(out, field);
+            }
+        });
+    }
+
+    public static ByteBuffer encodeMessage(String message) {
+        return encode(OP_MESSAGE, message.length() + 2, out -> writeString(out, message));
+    }
+
+    public static ByteBuffer encodeTrips(byte opcode, List<Trip> trips) {
+        return encode(opcode, 4 + trips.size() * TRIP_BYTES_ESTIMATE, out -> writeTripList(out, trips));
+    }
+
+    public static ByteBuffer encodeCatalog(long version, List<Trip> trips) {
+        return encode(OP_CATALOG, 12 + trips.size() * TRIP_BYTES_ESTIMATE, out -> {
+            writeVarLong(out, version);
+            writeTripList(out, trips);
+        });
+    }
+
+    /** {@code opcode} is {@link #OP_TRIP_ADDED} or {@link #OP_TRIP_CHANGED}. */
+    public static ByteBuffer encodeTripEvent(byte opcode, long version, Trip trip) {
+        return encode(opcode, TRIP_BYTES_ESTIMATE + 16, out -> {
+            writeVarLong(out, version);
+            writeVarInt(out, trip.getId());
+            writeString(out, trip.getAttractionName());
+            writeString(out, trip.getTransportCompany());
+            writeString(out, trip.getDepartureTime());
+            writeVarLong(out, Math.round(trip.getPrice() * 100));
+            writeVarInt(out, trip.getAvailableSeats());
+        });
+    }
+
+    public static ByteBuffer encodeTripRemoved(long version, int tripId) {
+        return encode(OP_TRIP_REMOVED, 16, out -> {
+            writeVarLong(out, version);
+            writeVarInt(out, tripId);
+        });
+    }
+
+    /** Wraps an encoded frame as the reply to the request tagged {@code requestId}. */
+    public static ByteBuffer encodeReply(String requestId, ByteBuffer frame) {
+        ByteBuffer inner = frame.duplicate();
+        inner.position(inner.position() + HEADER_BYTES);
+        return encode(OP_REPLY, requestId.length() + 1 + inner.remaining(), out -> {
+            writeString(out, requestId);
+            out.write(inner.array(), inner.arrayOffset() + inner.position(), inner.remaining());
+        });
+    }
+
+    private static void writeTripList(DataOutputStream out, List<Trip> trips) throws IOException {
+        // Few companies serve many trips, so each name is sent once per frame.
+        Map<String, Integer> companies = new LinkedHashMap<>();
+        for (Trip trip : trips) {
+            companies.putIfAbsent(nullToEmpty(trip.getTransportCompany()), companies.size());
+        }
+        writeVarInt(out, trips.size());
+        writeVarInt(out, companies.size());
+        for (String company : companies.keySet()) {
+            writeString(out, company);
+        }
+        for (Trip trip : trips) {
+            writeVarInt(out, trip.getId());
+            writeString(out, trip.getAttractionName());
+            writeVarInt(out, companies.get(nullToEmpty(trip.getTransportCompany())));
+            writeString(out, trip.getDepartureTime());
+            writeVarLong(out, Math.round(trip.getPrice() * 100));
+            writeVarInt(out, trip.getAvailableSeats());
+        }
+    }
+
+    public static ByteBuffer encodeUsers(List<User> users) {
+        return encode(OP_USERS, 4 + users.size() * 32, out -> {
+            writeVarInt(out, users.size());
+            for (User user : users) {
+                writeVarInt(out, user.getId());
+                writeString(out, user.getUsername());
+                writeString(out, user.getPassword());
+            }
+        });
+    }
+
+    public static ByteBuffer encodeReservation(Reservation reservation) {
+        return encode(OP_RESERVATION, 16, out -> {
+            writeVarInt(out, reservation.getId());
+            writeVarInt(out, reservation.getTrip());
+            writeVarInt(out, reservation.getCustomer());
+            writeVarInt(out, reservation.getNumberOfTickets());
+        });
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = nullToEmpty(value).getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static ByteBuffer encode(byte opcode, int sizeHint, PayloadWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES + 1 + sizeHint);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0);
+            out.writeByte(opcode);
+            writer.write(out);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalArgumentException("Cannot encode frame 0x" + Integer.toHexString(opcode) + ": " + e.getMessage(), e);
+        }
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.capacity() - HEADER_BYTES);
+        return frame;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    // ---- decoding ----
+
+    /** Reads one frame; returns null at end of stream. */
+    public static Frame readFrame(DataInputStream in, int maxFrameBytes) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 1 || length > maxFrameBytes) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte opcode = in.readByte();
+        byte[] payload = new byte[length - 1];
+        in.readFully(payload);
+        return new Frame(opcode, payload);
+    }
+
+    /** Decodes a frame body (opcode + payload, without the length prefix) sent by a client. */
+    public static String[] decodeCommand(byte[] body, int offset, int length) throws IOException {
+        if (length < 1 || body[offset] != OP_COMMAND) {
+            throw new IOException("Unexpected client opcode: " + (length < 1 ? "none" : "0x" + Integer.toHexString(body[offset])));
+        }
+        return readFields(new DataInputStream(new ByteArrayInputStream(body, offset + 1, length - 1)));
+    }
+
+    public static String[] decodeCommand(Frame frame) throws IOException {
+        if (frame.getOpcode() != OP_COMMAND) {
+            throw new IOException("Unexpected client opcode: 0x" + Integer.toHexString(frame.getOpcode()));
+        }
+        return readFields(frame.payloadStream());
+    }
+
+    private static String[] readFields(DataInputStream in) throws IOException {
+        int count = readVarInt(in);
+        String[] fields = new String[count];
+        for (int i = 0; i < count; i++) {
+            fields[i] = readString(in);
+        }
+        return fields;
+    }
+
+    /** Unwraps an {@link #OP_REPLY} frame; the result carries the request id. */
+    public static Frame decodeReply(Frame frame) throws IOException {
+        DataInputStream in = frame.payloadStream();
+        String requestId = readString(in);
+        byte opcode = in.readByte();
+        return new Frame(opcode, in.readAllBytes(), requestId);
+    }
+
+    public static String decodeMessage(Frame frame) throws IOException {
+        return readString(frame.payloadStream());
+    }
+
+    public static List<Trip> decodeTrips(Frame frame) throws IOException {
+        return readTripList(frame.payloadStream());
+    }
+
+    static List<Trip> readTripList(DataInputStream in) throws IOException {
+        int count = readVarInt(in);
+        String[] companies = new String[readVarInt(in)];
+        for (int i = 0; i < companies.length; i++) {
+            companies[i] = readString(in);
+        }
+        List<Trip> trips = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = readVarInt(in);
+            String attraction = readString(in);
+            int company = readVarInt(in);
+            if (company >= companies.length) {
+                throw new IOException("Transport company index out of range: " + company);
+            }
+            String departure = readString(in);
+            double price = readVarLong(in) / 100.0;
+            trips.add(new Trip(id, attraction, companies[company], departure, price, readVarInt(in)));
+        }
+        return trips;
+    }
+
+    /** Reads the trip of an {@link #OP_TRIP_ADDED} / {@link #OP_TRIP_CHANGED} frame, after its version. */
+    static Trip readTrip(DataInputStream in) throws IOException {
+        int id = readVarInt(in);
+        String attraction = readString(in);
+        String company = readString(in);
+        String departure = readString(in);
+        double price = readVarLong(in) / 100.0;
+        return new Trip(id, attraction, company, departure, price, readVarInt(in));
+    }
+
+    public static List<User> decodeUsers(Frame frame) throws IOException {
+        DataInputStream in = frame.payloadStream();
+        int count = readVarInt(in);
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new User(readVarInt(in), readString(in), readString(in)));
+        }
+        return users;
+    }
+
+    public static Reservation decodeReservation(Frame frame) throws IOException {
+        DataInputStream in = frame.payloadStream();
+        return new Reservation(readVarInt(in), readVarInt(in), readVarInt(in), readVarInt(in));
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        if (value > 0xFFFFFFFFL) {
+            throw new IOException("Varint does not fit in an int");
+        }
+        return (int) value;
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.available()) {
+            throw new IOException("String length out of range: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
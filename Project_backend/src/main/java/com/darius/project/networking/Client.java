@@ -1,45 +1,99 @@
 package com.darius.project.networking;
+import com.darius.project.domain.*;
+import com.darius.project.repository.Database.Config;
 import javafx.application.Platform;
 import org.slf4j.*;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Client {
     private static final Logger LOGGER = LoggerFactory.getLogger(Client.class);
     private static Client instance;
-    private BufferedReader in;
-    private PrintWriter out;
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final String HOST = "localhost";
+    private static final int PORT = 5556;
+    private DataInputStream in;
+    private LineReader lineReader;
+    private OutputStream out;
+    private boolean binary = false;
     private OnMessageReceivedListener listener;
-    private boolean connected = false;
+    private OnTripsReceivedListener tripsListener;
+    private volatile boolean connected = false;
+    private Socket socket;
+    // Issued by the server on connect; presented with the catalog version to resume after a reconnect.
+    private volatile String sessionToken;
+    private final long reconnectInitialMillis = Config.getIntProperty("client.reconnect.initial.ms", 500);
+    private final long reconnectMaxMillis = Config.getIntProperty("client.reconnect.max.ms", 30_000);
+    // Listener thread only.
+    private final TripCatalog catalog = new TripCatalog();
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> pendingRequests = new ConcurrentHashMap<>();
+    private final Duration requestTimeout = Duration.ofMillis(Config.getIntProperty("client.request.timeout.ms", 10_000));
+
+    /** A trip-list reply decoded from a binary frame; {@code prefix} is its text form's header, e.g. "TRIPS#". */
+    private static final class TripsReply {
+        private final String prefix;
+        private final List<Trip> trips;
+
+        private TripsReply(String prefix, List<Trip> trips) {
+            this.prefix = prefix;
+            this.trips = trips;
+        }
+    }
 
     public interface OnMessageReceivedListener {  void onMessageReceived(String message); }
 
-    @SuppressWarnings("resource")
+    /**
+     * Decoded trip lists. {@code kind} is "CATALOG" for the full, current catalog after a snapshot or any applied
+     * change event; "TRIPS" and "SEARCH_RESULTS" replies only come through here on the binary protocol.
+     */
+    public interface OnTripsReceivedListener { void onTripsReceived(String kind, List<Trip> trips); }
+
     private Client() {
         LOGGER.info("Initializing Client singleton");
 
         try {
-            Socket socket = new Socket("localhost", 5556);
-
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
-            connected = true;
-            LOGGER.info("Successfully connected to server at {}", socket.getRemoteSocketAddress());
+            connect();
 
             Thread listenerThread = new Thread(this::listenToServer);
             listenerThread.setName("ServerListenerThread");
             listenerThread.setDaemon(true);
             listenerThread.start();
+            write("SESSION");
 
         } catch (ConnectException ce) {
-            LOGGER.error("Server is not running on localhost:5556. Please start the server first.");
-            System.err.println("❌ Server is not running on localhost:5556. Please start the server first.");
+            LOGGER.error("Server is not running on {}:{}. Please start the server first.", HOST, PORT);
+            System.err.println("❌ Server is not running on " + HOST + ":" + PORT + ". Please start the server first.");
         } catch (IOException e) {
             LOGGER.error("Error connecting to server: {}", e.getMessage(), e);
             System.err.println("❌ Error connecting to server: " + e.getMessage());
         }
     }
 
+    /** Opens the socket and negotiates the protocol; writes are refused until it returns. */
+    private void connect() throws IOException {
+        Socket newSocket = new Socket(HOST, PORT);
+        synchronized (this) {
+            socket = newSocket;
+            in = new DataInputStream(new BufferedInputStream(newSocket.getInputStream()));
+            lineReader = new LineReader(in, MAX_FRAME_BYTES);
+            out = new BufferedOutputStream(newSocket.getOutputStream());
+            binary = false;
+        }
+        LOGGER.info("Successfully connected to server at {}", newSocket.getRemoteSocketAddress());
+
+        if ("binary".equalsIgnoreCase(Config.getProperty("client.protocol", "text"))) {
+            negotiateBinary();
+        }
+        connected = true;
+    }
+
     public static Client getInstance() {
         if (instance == null) {
             LOGGER.debug("Creating new Client instance");
@@ -48,54 +102,379 @@ public class Client {
         return instance;
     }
 
+    /** Runs before the listener thread starts, so the acknowledgement is read here and not dispatched. */
+    private void negotiateBinary() throws IOException {
+        writeLine(BinaryProtocol.SWITCH_COMMAND);
+        String line;
+        while ((line = lineReader.readLine()) != null) {
+            if (line.equals(BinaryProtocol.SWITCH_COMMAND)) {
+                binary = true;
+                LOGGER.info("Using binary protocol");
+                return;
+            }
+            if (line.equals("PROTOCOL_UNSUPPORTED") || line.equals("UNKNOWN_COMMAND")) {
+                LOGGER.warn("Server does not support the binary protocol, staying on text");
+                return;
+            }
+            LOGGER.debug("Skipping message received before protocol switch: {}", line);
+        }
+        throw new EOFException("Server closed the connection during protocol negotiation");
+    }
+
+    /** Reads until the connection drops, then reconnects and resumes; runs for the life of the client. */
     private void listenToServer() {
         LOGGER.info("Server listener thread started");
+        while (true) {
+            try {
+                if (binary) {
+                    BinaryProtocol.Frame frame;
+                    while ((frame = BinaryProtocol.readFrame(in, MAX_FRAME_BYTES)) != null) {
+                        dispatchFrame(frame);
+                    }
+                } else {
+                    String line;
+                    while ((line = lineReader.readLine()) != null) {
+                        dispatchMessage(line);
+                    }
+                }
+                LOGGER.info("Server connection closed (end of stream)");
+            } catch (IOException e) {
+                LOGGER.error("Disconnected from server: {}", e.getMessage(), e);
+                System.err.println("❌ Disconnected from server: " + e.getMessage());
+            } finally {
+                connected = false;
+                closeSocket();
+                IOException disconnected = new IOException("Disconnected from server");
+                pendingRequests.values().forEach(reply -> reply.completeExceptionally(disconnected));
+            }
+            reconnect();
+        }
+    }
+
+    /**
+     * Retries with exponential backoff and random jitter, so desks that lost the network together do not all
+     * come back at the same instant, then resumes the session instead of reloading the whole catalog.
+     */
+    private void reconnect() {
+        long delay = reconnectInitialMillis;
+        while (true) {
+            try {
+                Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                connect();
+                break;
+            } catch (IOException e) {
+                LOGGER.info("Reconnect failed: {}, retrying in up to {} ms", e.getMessage(), delay);
+                closeSocket();
+                delay = Math.min(delay * 2, reconnectMaxMillis);
+            }
+        }
+        System.out.println("✅ Reconnected to server");
+        String token = sessionToken;
+        if (catalog.isLoaded()) {
+            write(token != null ? "RESUME#" + token + "#" + catalog.getVersion() : "GET_CATALOG");
+        }
+        if (token == null) {
+            write("SESSION");
+        }
+    }
+
+    private synchronized void closeSocket() {
+        if (socket == null) {
+            return;
+        }
         try {
-            String line;
-            while ((line = in.readLine()) != null) {
-                LOGGER.debug("Received message from server: {}", line);
-                if (listener != null) {
-                    String finalLine = line;
+            socket.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error closing socket: {}", e.getMessage());
+        }
+    }
+
+    private void dispatchFrame(BinaryProtocol.Frame frame) throws IOException {
+        switch (frame.getOpcode()) {
+            case BinaryProtocol.OP_TRIPS, BinaryProtocol.OP_SEARCH_RESULTS -> {
+                String kind = frame.getOpcode() == BinaryProtocol.OP_TRIPS ? "TRIPS" : "SEARCH_RESULTS";
+                List<Trip> trips = BinaryProtocol.decodeTrips(frame);
+                LOGGER.debug("Received {} frame with {} trips", kind, trips.size());
+                OnTripsReceivedListener current = tripsListener;
+                if (current != null) {
                     Platform.runLater(() -> {
                         try {
-                            listener.onMessageReceived(finalLine);
+                            current.onTripsReceived(kind, trips);
                         } catch (Exception e) {
-                            LOGGER.error("Error in message listener callback: {}", e.getMessage(), e);
+                            LOGGER.error("Error in trips listener callback: {}", e.getMessage(), e);
                         }
                     });
                 } else {
-                    LOGGER.warn("Received message but no listener is registered: {}", line);
+                    dispatchMessage(kind + "#" + TextProtocol.formatTrips(trips));
                 }
             }
-            LOGGER.info("Server connection closed (end of stream)");
-        } catch (IOException e) {
-            connected = false;
-            LOGGER.error("Disconnected from server: {}", e.getMessage(), e);
-            System.err.println("❌ Disconnected from server: " + e.getMessage());
+            case BinaryProtocol.OP_USERS -> dispatchMessage("USERS#" + TextProtocol.formatUsers(BinaryProtocol.decodeUsers(frame)));
+            case BinaryProtocol.OP_RESERVATION -> {
+                Reservation reservation = BinaryProtocol.decodeReservation(frame);
+                LOGGER.info("Reservation {} created for trip {}", reservation.getId(), reservation.getTrip());
+                dispatchMessage("RESERVATION_SUCCESS");
+            }
+            case BinaryProtocol.OP_CATALOG -> {
+                DataInputStream payload = frame.payloadStream();
+                long version = BinaryProtocol.readVarLong(payload);
+                loadCatalog(version, BinaryProtocol.readTripList(payload));
+            }
+            case BinaryProtocol.OP_TRIP_ADDED, BinaryProtocol.OP_TRIP_CHANGED -> {
+                DataInputStream payload = frame.payloadStream();
+                long version = BinaryProtocol.readVarLong(payload);
+                Trip trip = BinaryProtocol.readTrip(payload);
+                String kind = frame.getOpcode() == BinaryProtocol.OP_TRIP_ADDED ? TripCatalog.TRIP_ADDED : TripCatalog.TRIP_CHANGED;
+                applyTripEvent(kind, version, trip.getId(), trip);
+            }
+            case BinaryProtocol.OP_TRIP_REMOVED -> {
+                DataInputStream payload = frame.payloadStream();
+                long version = BinaryProtocol.readVarLong(payload);
+                applyTripEvent(TripCatalog.TRIP_REMOVED, version, BinaryProtocol.readVarInt(payload), null);
+            }
+            case BinaryProtocol.OP_MESSAGE -> dispatchMessage(BinaryProtocol.decodeMessage(frame));
+            case BinaryProtocol.OP_REPLY -> {
+                BinaryProtocol.Frame reply = BinaryProtocol.decodeReply(frame);
+                completeRequest(reply.getRequestId(), decodeReply(reply));
+            }
+            default -> LOGGER.warn("Ignoring frame with unknown opcode 0x{}", Integer.toHexString(frame.getOpcode()));
+        }
+    }
+
+    private static Object decodeReply(BinaryProtocol.Frame frame) throws IOException {
+        return switch (frame.getOpcode()) {
+            case BinaryProtocol.OP_TRIPS -> new TripsReply("TRIPS#", BinaryProtocol.decodeTrips(frame));
+            case BinaryProtocol.OP_SEARCH_RESULTS -> new TripsReply("SEARCH_RESULTS#", BinaryProtocol.decodeTrips(frame));
+            case BinaryProtocol.OP_CATALOG -> {
+                DataInputStream payload = frame.payloadStream();
+                long version = BinaryProtocol.readVarLong(payload);
+                yield new TripsReply(TripCatalog.CATALOG + "#" + version + "#", BinaryProtocol.readTripList(payload));
+            }
+            case BinaryProtocol.OP_USERS -> "USERS#" + TextProtocol.formatUsers(BinaryProtocol.decodeUsers(frame));
+            case BinaryProtocol.OP_RESERVATION -> "RESERVATION_SUCCESS";
+            case BinaryProtocol.OP_MESSAGE -> BinaryProtocol.decodeMessage(frame);
+            default -> throw new IOException("Unexpected reply opcode 0x" + Integer.toHexString(frame.getOpcode()));
+        };
+    }
+
+    private void completeRequest(String requestId, Object reply) {
+        CompletableFuture<Object> pending = pendingRequests.remove(requestId);
+        if (pending == null) {
+            LOGGER.debug("Dropping reply to unknown or timed-out request @{}", requestId);
+            return;
+        }
+        pending.complete(reply);
+    }
+
+    private void dispatchMessage(String line) {
+        LOGGER.debug("Received message from server: {}", line);
+        if (line.startsWith("@")) {
+            int separator = line.indexOf('#');
+            if (separator > 0) {
+                completeRequest(line.substring(1, separator), line.substring(separator + 1));
+                return;
+            }
+        }
+        if (handleCatalogLine(line) || handleSessionLine(line)) {
+            return;
+        }
+        if (listener != null) {
+            Platform.runLater(() -> {
+                try {
+                    listener.onMessageReceived(line);
+                } catch (Exception e) {
+                    LOGGER.error("Error in message listener callback: {}", e.getMessage(), e);
+                }
+            });
+        } else {
+            LOGGER.warn("Received message but no listener is registered: {}", line);
         }
     }
 
+    /** Text protocol: CATALOG#version#rows and TRIP_ADDED|TRIP_CHANGED#version#row / TRIP_REMOVED#version#id. */
+    private boolean handleCatalogLine(String line) {
+        String[] parts = line.split("#", 3);
+        String kind = parts[0];
+        boolean event = kind.equals(TripCatalog.TRIP_ADDED) || kind.equals(TripCatalog.TRIP_CHANGED) || kind.equals(TripCatalog.TRIP_REMOVED);
+        if (!event && !kind.equals(TripCatalog.CATALOG)) {
+            return false;
+        }
+        try {
+            long version = Long.parseLong(parts[1]);
+            String body = parts.length > 2 ? parts[2] : "";
+            if (kind.equals(TripCatalog.CATALOG)) {
+                loadCatalog(version, TextProtocol.parseTrips(body));
+            } else if (kind.equals(TripCatalog.TRIP_REMOVED)) {
+                applyTripEvent(kind, version, Integer.parseInt(body), null);
+            } else {
+                Trip trip = TextProtocol.parseTrip(body);
+                applyTripEvent(kind, version, trip.getId(), trip);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Error parsing catalog message: {}, error: {}", line, e.getMessage(), e);
+        }
+        return true;
+    }
+
+    /** SESSION#token, RESUMED#version and RESUME_FAILED; the GUI never sees these. */
+    private boolean handleSessionLine(String line) {
+        if (line.startsWith("SESSION#")) {
+            sessionToken = line.substring("SESSION#".length());
+            LOGGER.debug("Session token received");
+        } else if (line.startsWith("RESUMED#")) {
+            LOGGER.info("Session resumed, trip catalog at version {}", catalog.getVersion());
+        } else if (line.startsWith("RESUME_FAILED")) {
+            LOGGER.info("Server no longer knows this session, reloading catalog");
+            sessionToken = null;
+            sendMessage("GET_CATALOG");
+            sendMessage("SESSION");
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void loadCatalog(long version, List<Trip> trips) {
+        LOGGER.info("Trip catalog loaded at version {} with {} trips", version, trips.size());
+        catalog.reset(version, trips);
+        publishCatalog();
+    }
+
+    private void applyTripEvent(String kind, long version, int tripId, Trip trip) {
+        switch (catalog.apply(kind, version, tripId, trip)) {
+            case APPLIED -> {
+                LOGGER.debug("Applied {} for trip {} at catalog version {}", kind, tripId, version);
+                publishCatalog();
+            }
+            case GAP -> {
+                LOGGER.info("Missed trip catalog events before version {}, reloading catalog", version);
+                sendMessage("GET_CATALOG");
+            }
+            case IGNORED -> LOGGER.debug("Ignoring {} at version {} (catalog at {})", kind, version, catalog.getVersion());
+        }
+    }
+
+    private void publishCatalog() {
+        OnTripsReceivedListener current = tripsListener;
+        if (current == null) {
+            return;
+        }
+        List<Trip> trips = catalog.getTrips();
+        Platform.runLater(() -> {
+            try {
+                current.onTripsReceived(TripCatalog.CATALOG, trips);
+            } catch (Exception e) {
+                LOGGER.error("Error in trips listener callback: {}", e.getMessage(), e);
+            }
+        });
+    }
+
     public void setOnMessageReceivedListener(OnMessageReceivedListener listener) {
         LOGGER.debug("Setting message received listener");
         this.listener = listener;
     }
 
-    public void sendMessage(String message) {
-        if (!connected) {
-            LOGGER.error("Cannot send message - not connected to server");
-            return;
+    public void setOnTripsReceivedListener(OnTripsReceivedListener tripsListener) {
+        this.tripsListener = tripsListener;
+    }
+
+    /**
+     * Sends a tagged request and completes with its reply in text form (e.g. "TRIPS#..." or "LOGIN_FAILED").
+     * The reply does not go to the message listener, so several requests can be in flight at once; the server
+     * may answer tagged reads out of order. Completes on the listener thread (use Platform.runLater for the UI)
+     * and fails with a TimeoutException after client.request.timeout.ms.
+     */
+    public CompletableFuture<String> request(String message) {
+        return request(message, requestTimeout);
+    }
+
+    public CompletableFuture<String> request(String message, Duration timeout) {
+        return sendRequest(message, timeout).thenApply(Client::replyAsText);
+    }
+
+    /** Like {@link #request(String)} for commands answered with a trip list; other replies fail the future. */
+    public CompletableFuture<List<Trip>> requestTrips(String message) {
+        return requestTrips(message, requestTimeout);
+    }
+
+    public CompletableFuture<List<Trip>> requestTrips(String message, Duration timeout) {
+        return sendRequest(message, timeout).thenApply(Client::replyAsTrips);
+    }
+
+    private CompletableFuture<Object> sendRequest(String message, Duration timeout) {
+        String requestId = Long.toString(nextRequestId.incrementAndGet());
+        CompletableFuture<Object> reply = new CompletableFuture<>();
+        pendingRequests.put(requestId, reply);
+        reply.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).whenComplete((result, error) -> pendingRequests.remove(requestId));
+        LOGGER.info("Sending request @{}: {}", requestId, loggable(message));
+        if (!write("@" + requestId + "#" + message)) {
+            reply.completeExceptionally(new IOException("Not connected to server"));
         }
-        if (message.startsWith("LOGIN#")) {
-            LOGGER.info("Sending message: LOGIN# [credentials hidden]");
-        } else {
-            LOGGER.info("Sending message: {}", message);
+        return reply;
+    }
+
+    private static String replyAsText(Object reply) {
+        if (reply instanceof TripsReply tripsReply) {
+            return tripsReply.prefix + TextProtocol.formatTrips(tripsReply.trips);
+        }
+        return (String) reply;
+    }
+
+    private static List<Trip> replyAsTrips(Object reply) {
+        if (reply instanceof TripsReply tripsReply) {
+            return tripsReply.trips;
+        }
+        String text = (String) reply;
+        if (text.startsWith("TRIPS#") || text.startsWith("SEARCH_RESULTS#")) {
+            return TextProtocol.parseTrips(text.substring(text.indexOf('#') + 1));
         }
+        if (text.startsWith(TripCatalog.CATALOG + "#")) {
+            String[] parts = text.split("#", 3);
+            return TextProtocol.parseTrips(parts.length > 2 ? parts[2] : "");
+        }
+        throw new IllegalStateException("Unexpected reply: " + text);
+    }
 
-        out.println(message);
+    /** Fire-and-forget; the reply arrives through the message listener. */
+    public void sendMessage(String message) {
+        LOGGER.info("Sending message: {}", loggable(message));
+        write(message);
+    }
 
-        if (out.checkError()) {
-            LOGGER.error("Error occurred while sending message");
+    private static String loggable(String message) {
+        return message.startsWith("LOGIN#") ? "LOGIN# [credentials hidden]" : message;
+    }
+
+    /** Called from the FX thread, from request callers and, for catalog reloads, from the listener thread. */
+    private synchronized boolean write(String message) {
+        if (!connected) {
+            LOGGER.error("Cannot send message - not connected to server");
+            return false;
+        }
+        try {
+            if (binary) {
+                ByteBuffer frame = BinaryProtocol.encodeCommand(message.split("#"));
+                out.write(frame.array(), frame.arrayOffset(), frame.remaining());
+                out.flush();
+            } else {
+                writeLine(message);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Error occurred while sending message: {}", e.getMessage());
             connected = false;
+            // Unblocks the listener thread, which then reconnects.
+            closeSocket();
+            return false;
         }
     }
-}
\ No newline at end of file
+
+    private void writeLine(String message) throws IOException {
+        out.write((message + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
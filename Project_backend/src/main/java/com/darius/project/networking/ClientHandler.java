@@ -1,84 +1,82 @@
 package com.darius.project.networking;
 import com.darius.project.domain.*;
-import com.darius.project.repository.Database.*;
-import com.darius.project.repository.GenericRepos.*;
-import com.darius.project.repository.ORM.*;
 import com.darius.project.service.*;
-import org.hibernate.*;
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ClientHandler implements Runnable {
-    private final Socket socket;
+    private final Connection connection;
     private final Server server;
-    private BufferedReader in;
-    private PrintWriter out;
-
-    private final SessionFactory sessionFactory = HibernateUtil.getSessionFactory();
-    private final TripRepository tripRepository = new HibernateTripRepository(sessionFactory);
-    private final TripService tripService = new TripService(tripRepository);
-    private final UserService userService = new UserService(new UserDB());
-    private final ReservationService reservationService = new ReservationService(new ReservationDB());
-    private final CustomerService customerService = new CustomerService(new CustomerDB());
-
-    public ClientHandler(Socket socket, Server server) {
-        this.socket = socket;
+    private SocketConnection socketConnection;
+    private boolean binaryInput = false;
+    private volatile boolean binaryOutput = false;
+    // Keeps the text acknowledgement of PROTOCOL#BINARY ahead of any broadcast sent as a frame.
+    private final ReentrantLock sendLock = new ReentrantLock();
+    // Id of the tagged request being handled on this thread, echoed on its replies; null for untagged requests.
+    private static final ThreadLocal<String> REQUEST_ID = new ThreadLocal<>();
+    // Side-effect-free commands a tagged request may run concurrently with the connection's other requests.
+    private static final Set<String> CONCURRENT_READS = Set.of("GET_TRIPS", "GET_USERS", "STATS");
+    // Commands answered from memory. Every other command takes a token from the connection's rate limit and a place in
+    // admission control before it reaches the services; a refused one is answered RATE_LIMITED or OVERLOADED.
+    private static final Set<String> UNMETERED = Set.of("PROTOCOL", "GET_TRIPS", "GET_CATALOG", "SESSION", "RESUME", "STATS");
+    // Encodings this handler stores on a TripSnapshot.
+    private static final String TRIP_ROWS = "socket.trip.rows";
+    private static final String TRIPS_LINE = "socket.trips.line";
+    private static final String TRIPS_FRAME = "socket.trips.frame";
+
+    private final TripService tripService;
+    private final UserService userService;
+    private final BookingService bookingService;
+    private final SeatHoldService seatHoldService;
+    private final WaitlistService waitlistService;
+    private final AdmissionControl admissionControl;
+    // A newer search of the same kind replaces a queued one and discards the result of a running one.
+    private final SearchDebouncer tripSearches;
+    private final SearchDebouncer userSearches;
+
+    /** Blocking mode: the handler owns the socket and reads from it in {@link #run()}. */
+    public ClientHandler(Socket socket, Server server, ServiceContainer services, int maxRequestBytes, OutboundQueue outbound) throws IOException {
+        this(new SocketConnection(socket, maxRequestBytes, outbound), server, services);
+        socketConnection.start();
+    }
+
+    /** Event-driven mode: the transport frames requests and feeds them to {@link #handleRequest(String[])}. */
+    public ClientHandler(Connection connection, Server server, ServiceContainer services) {
+        this.connection = connection;
         this.server = server;
-        try {
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
-        } catch (IOException e) {
-            System.err.println("❌ Error setting up streams: " + e.getMessage());
+        if (connection instanceof SocketConnection blocking) {
+            this.socketConnection = blocking;
         }
+        this.tripService = services.getTripService();
+        this.userService = services.getUserService();
+        this.bookingService = services.getBookingService();
+        this.seatHoldService = services.getSeatHoldService();
+        this.waitlistService = services.getWaitlistService();
+        this.admissionControl = services.getAdmissionControl();
+        this.tripSearches = new SearchDebouncer(server, server.getSearchDebounceMillis());
+        this.userSearches = new SearchDebouncer(server, server.getSearchDebounceMillis());
     }
 
     @Override
     public void run() {
-        String request;
+        String[] request;
+        Semaphore permits = server.getRequestPermits();
         try {
-            while ((request = in.readLine()) != null) {
-                String[] parts = request.split("#");
-                String command = parts[0];
-                switch (command) {
-                    case "LOGIN":
-                        handleLogin(parts[1], parts[2]);
-                        break;
-                    case "GET_TRIPS":
-                        sendTrips();
-                        break;
-                    case "MAKE_RESERVATION":
-                        makeReservation(parts[1], parts[2], parts[3], parts[4]);
-                        break;
-                    // User management commands
-                    case "ADD_USER":
-                        handleUserUpdate("ADD", parts[1]);
-                        break;
-                    case "UPDATE_USER":
-                        handleUserUpdate("UPDATE", parts[1]);
-                        break;
-                    case "DELETE_USER":
-                        handleUserUpdate("DELETE", parts[1]);
-                        break;
-                    case "GET_USERS":
-                        sendUsers();
-                        break;
-                    // Trip management commands
-                    case "ADD_TRIP":
-                        handleTripUpdate("ADD", parts[1]);
-                        break;
-                    case "UPDATE_TRIP":
-                        handleTripUpdate("UPDATE", parts[1]);
-                        break;
-                    case "DELETE_TRIP":
-                        handleTripUpdate("DELETE", parts[1]);
-                        break;
-                    case "SEARCH_TRIPS":
-                        searchTrips(parts[1], parts.length > 2 ? parts[2] : "", parts.length > 3 ? parts[3] : "");
-                        break;
-                    default:
-                        out.println("UNKNOWN_COMMAND");
-                        break;
+            while ((request = readRequest()) != null) {
+                if (permits == null) {
+                    handleRequest(request);
+                    continue;
+                }
+                permits.acquireUninterruptibly();
+                try {
+                    handleRequest(request);
+                } finally {
+                    permits.release();
                 }
             }
         } catch (IOException e) {
@@ -88,59 +86,420 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    /** Blocking mode: next request as text-protocol fields, or null when the client has gone. */
+    private String[] readRequest() throws IOException {
+        if (binaryInput) {
+            BinaryProtocol.Frame frame = socketConnection.readFrame();
+            return frame == null ? null : BinaryProtocol.decodeCommand(frame);
+        }
+        String line = socketConnection.readLine();
+        if (line == null) {
+            return null;
+        }
+        if (line.equals(BinaryProtocol.SWITCH_COMMAND)) {
+            // Switch before reading on: the client may pipeline frames right behind this line.
+            binaryInput = true;
+        }
+        return line.split("#");
+    }
+
+    public void handleRequest(String request) {
+        handleRequest(request.split("#"));
+    }
+
+    /**
+     * Requests may start with an {@code @<id>} field; every reply to them carries the same prefix
+     * ({@code @<id>#...} in text, an {@link BinaryProtocol#OP_REPLY} frame in binary). Tagged read commands are
+     * handed to the server's read executor, so they can overlap; everything else runs in arrival order.
+     * Searches are debounced per kind: only the latest one a client sends in a burst runs, and a tagged search that
+     * is replaced is answered {@code SEARCH_SUPERSEDED}.
+     */
+    public void handleRequest(String[] parts) {
+        boolean tagged = parts.length > 0 && parts[0].startsWith("@");
+        String requestId = tagged ? parts[0].substring(1) : null;
+        String[] command = tagged ? Arrays.copyOfRange(parts, 1, parts.length) : parts;
+        SearchDebouncer searches = searchesFor(command);
+        if (searches != null) {
+            searches.submit(tagged ? () -> handleTagged(requestId, command) : () -> dispatch(command),
+                    tagged ? () -> replyTagged(requestId, "SEARCH_SUPERSEDED") : () -> {});
+        } else if (!tagged) {
+            dispatch(parts);
+        } else if (command.length > 0 && CONCURRENT_READS.contains(command[0])) {
+            server.executeRead(() -> handleTagged(requestId, command));
+        } else {
+            handleTagged(requestId, command);
+        }
+    }
+
+    private SearchDebouncer searchesFor(String[] command) {
+        if (command.length < 2) {
+            return null;
+        }
+        return switch (command[0]) {
+            case "SEARCH_TRIPS" -> tripSearches;
+            case "SEARCH_USERS" -> userSearches;
+            default -> null;
+        };
+    }
+
+    private void replyTagged(String requestId, String message) {
+        REQUEST_ID.set(requestId);
+        try {
+            sendMessage(message);
+        } finally {
+            REQUEST_ID.remove();
+        }
+    }
+
+    /** Inside a debounced search: true, after answering a tagged request, when a newer search replaced this one. */
+    private boolean dropSuperseded(SearchDebouncer searches) {
+        if (!searches.isSuperseded()) {
+            return false;
+        }
+        if (REQUEST_ID.get() != null) {
+            sendMessage("SEARCH_SUPERSEDED");
+        }
+        return true;
+    }
+
+    private void handleTagged(String requestId, String[] command) {
+        REQUEST_ID.set(requestId);
+        try {
+            dispatch(command);
+        } catch (RuntimeException e) {
+            // The client is waiting on this id; answer rather than let the caller time out.
+            sendMessage("REQUEST_FAILED#" + e.getMessage());
+            System.err.println("Error in request @" + requestId + ": " + e.getMessage());
+        } finally {
+            REQUEST_ID.remove();
+        }
+    }
+
+    private void dispatch(String[] parts) {
+        String command = parts.length > 0 ? parts[0] : "";
+        if (UNMETERED.contains(command)) {
+            execute(command, parts);
+            return;
+        }
+        if (!server.getRequestLimiter().tryAcquire(this)) {
+            sendMessage("RATE_LIMITED");
+            return;
+        }
+        if (!admissionControl.tryEnter()) {
+            sendMessage("OVERLOADED");
+            return;
+        }
+        try {
+            execute(command, parts);
+        } finally {
+            admissionControl.exit();
+        }
+    }
+
+    private void execute(String command, String[] parts) {
+        switch (command) {
+            case "PROTOCOL":
+                switchProtocol(parts.length > 1 ? parts[1] : "");
+                break;
+            case "LOGIN":
+                handleLogin(parts[1], parts[2]);
+                break;
+            case "GET_TRIPS":
+                sendTrips();
+                break;
+            case "GET_CATALOG":
+                sendCatalog();
+                break;
+            case "SESSION":
+                sendMessage("SESSION#" + server.openSession());
+                break;
+            case "RESUME":
+                resumeSession(parts[1], parts[2]);
+                break;
+            case "STATS":
+                sendMessage("STATS#" + server.describeOutboundStats() + "," + server.describeAdmissionStats());
+                break;
+            case "MAKE_RESERVATION":
+                makeReservation(parts[1], parts[2], parts[3], parts[4]);
+                break;
+            case "HOLD_SEATS":
+                holdSeats(parts[1], parts[2], parts[3], parts[4]);
+                break;
+            case "CONFIRM_HOLD":
+                confirmHold(parts[1]);
+                break;
+            case "RELEASE_HOLD":
+                releaseHold(parts[1]);
+                break;
+            case "CANCEL_RESERVATION":
+                cancelReservation(parts[1]);
+                break;
+            case "JOIN_WAITLIST":
+                joinWaitlist(parts[1], parts[2], parts[3], parts[4]);
+                break;
+            case "LEAVE_WAITLIST":
+                leaveWaitlist(parts[1]);
+                break;
+            case "SET_FLASH_MODE":
+                setFlashMode(parts[1], parts[2]);
+                break;
+            // User management commands
+            case "ADD_USER":
+                handleUserUpdate("ADD", parts[1]);
+                break;
+            case "UPDATE_USER":
+                handleUserUpdate("UPDATE", parts[1]);
+                break;
+            case "DELETE_USER":
+                handleUserUpdate("DELETE", parts[1]);
+                break;
+            case "GET_USERS":
+                sendUsers();
+                break;
+            // Trip management commands
+            case "ADD_TRIP":
+                handleTripUpdate("ADD", parts[1]);
+                break;
+            case "UPDATE_TRIP":
+                handleTripUpdate("UPDATE", parts[1]);
+                break;
+            case "DELETE_TRIP":
+                handleTripUpdate("DELETE", parts[1]);
+                break;
+            case "SEARCH_TRIPS":
+                searchTrips(parts[1], parts.length > 2 ? parts[2] : "", parts.length > 3 ? parts[3] : "");
+                break;
+            case "SEARCH_USERS":
+                searchUsers(parts[1]);
+                break;
+            default:
+                sendMessage("UNKNOWN_COMMAND");
+                break;
+        }
+    }
+
     private void handleLogin(String username, String password) {
         boolean valid = userService.checkLogin(username, password);
-        out.println(valid ? "LOGIN_SUCCESS" : "LOGIN_FAILED");
+        sendMessage(valid ? "LOGIN_SUCCESS" : "LOGIN_FAILED");
     }
 
+    /** The transport already frames the rest of the stream (see {@link #readRequest()}); here we switch replies. */
+    private void switchProtocol(String protocol) {
+        // The transport only switches framing on the exact untagged line, so a tagged switch cannot be honoured.
+        if (!"BINARY".equals(protocol) || REQUEST_ID.get() != null) {
+            sendMessage("PROTOCOL_UNSUPPORTED");
+            return;
+        }
+        sendLock.lock();
+        try {
+            connection.send(BinaryProtocol.SWITCH_COMMAND);
+            binaryOutput = true;
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /** Serves the shared catalog snapshot; untagged replies reuse the same encoded bytes for every client. */
     private void sendTrips() {
-        StringBuilder sb = new StringBuilder();
-        tripService.findAll().forEach(trip -> sb.append(formatTrip(trip)).append(";"));
-        out.println("TRIPS#" + sb);
+        TripSnapshot snapshot = tripService.getSnapshot();
+        ByteBuffer frame = snapshot.encoded(TRIPS_FRAME, trips -> BinaryProtocol.encodeTrips(BinaryProtocol.OP_TRIPS, trips));
+        String rows = snapshot.encoded(TRIP_ROWS, TextProtocol::formatTrips);
+        if (REQUEST_ID.get() != null) {
+            if (binaryOutput) {
+                sendFrame(frame);
+            } else {
+                sendMessage("TRIPS#" + rows);
+            }
+            return;
+        }
+        ByteBuffer line = snapshot.encoded(TRIPS_LINE, trips -> ByteBuffer.wrap(("TRIPS#" + rows + "\n").getBytes(StandardCharsets.UTF_8)));
+        sendEncoded(line, frame, null);
+    }
+
+    private void sendCatalog() {
+        server.withCatalogVersion(this::sendCatalogAt);
+    }
+
+    private void sendCatalogAt(long version) {
+        TripSnapshot snapshot = tripService.getSnapshot();
+        if (binaryOutput) {
+            sendFrame(BinaryProtocol.encodeCatalog(version, snapshot.getTrips()));
+        } else {
+            sendMessage(TripCatalog.CATALOG + "#" + version + "#" + snapshot.encoded(TRIP_ROWS, TextProtocol::formatTrips));
+        }
+    }
+
+    /**
+     * Brings a reconnected client's catalog from {@code lastVersion} to the current one: the missed events when the
+     * server still holds them, otherwise a full CATALOG. Either way the reply ends with {@code RESUMED#<version>}.
+     * An unknown token (expired, or issued before a server restart) is answered {@code RESUME_FAILED}.
+     */
+    private void resumeSession(String token, String lastVersionStr) {
+        long lastVersion;
+        try {
+            lastVersion = Long.parseLong(lastVersionStr);
+        } catch (NumberFormatException e) {
+            sendMessage("RESUME_FAILED#Invalid version");
+            return;
+        }
+        if (!server.isSession(token)) {
+            sendMessage("RESUME_FAILED");
+            return;
+        }
+        server.withCatalogVersion(version -> {
+            List<TripEventLog.Entry> missed = server.eventsSince(lastVersion);
+            if (missed == null) {
+                sendCatalogAt(version);
+            } else {
+                for (TripEventLog.Entry event : missed) {
+                    sendEncoded(event.line, event.frame, null);
+                }
+            }
+            sendMessage("RESUMED#" + version);
+        });
     }
 
     private void sendUsers() {
-        StringBuilder sb = new StringBuilder();
-        userService.findAll().forEach(user -> sb.append(formatUser(user)).append(";"));
-        out.println("USERS#" + sb);
+        sendUserList(userService.findAll());
     }
 
-    private String formatTrip(Trip trip) { return trip.getId() + "," + trip.getAttractionName() + "," + trip.getTransportCompany() + "," + trip.getDepartureTime() + "," + trip.getPrice() + "," + trip.getAvailableSeats(); }
+    private void sendUserList(List<User> users) {
+        if (binaryOutput) {
+            sendFrame(BinaryProtocol.encodeUsers(users));
+        } else {
+            sendMessage("USERS#" + TextProtocol.formatUsers(users));
+        }
+    }
 
-    private String formatUser(User user) { return user.getId() + "," + user.getUsername() + "," + user.getPassword(); }
+    private void sendTripList(String textPrefix, byte opcode, List<Trip> trips) {
+        if (binaryOutput) {
+            sendFrame(BinaryProtocol.encodeTrips(opcode, trips));
+        } else {
+            sendMessage(textPrefix + TextProtocol.formatTrips(trips));
+        }
+    }
 
     private void makeReservation(String customerName, String phone, String tripIdStr, String ticketsStr) {
         try {
             int tripId = Integer.parseInt(tripIdStr);
             int tickets = Integer.parseInt(ticketsStr);
-            Trip trip = tripService.findById(tripId);
-            if (trip == null || trip.getAvailableSeats() < tickets) {
-                out.println("RESERVATION_FAILED");
+            Reservation reservation;
+            try {
+                reservation = bookingService.book(customerName, phone, tripId, tickets);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                sendMessage("RESERVATION_FAILED");
                 return;
             }
 
-            Customer customer = customerService.findByCustomerName(customerName);
-            if (customer == null) {
-                int newCustomerId = generateCustomerId();
-                customer = new Customer(newCustomerId, customerName, "", phone);
-                customerService.save(customer);
+            if (binaryOutput) {
+                sendFrame(BinaryProtocol.encodeReservation(reservation));
+            } else {
+                sendMessage("RESERVATION_SUCCESS");
             }
+            server.publishSeats(tripId);
+        } catch (NumberFormatException e) {
+            sendMessage("RESERVATION_FAILED#Invalid number format");
+            System.err.println("Error in reservation: " + e.getMessage());
+        } catch (Exception e) {
+            sendMessage("RESERVATION_FAILED#" + e.getMessage());
+            System.err.println("Error in reservation: " + e.getMessage());
+        }
+    }
 
-            int reservationId = generateReservationId();
-            Reservation reservation = new Reservation(reservationId, tripId, customer.getId(), tickets);
-            reservationService.save(reservationId, reservation);
+    private void holdSeats(String customerName, String phone, String tripIdStr, String ticketsStr) {
+        try {
+            int tripId = Integer.parseInt(tripIdStr);
+            SeatHoldService.Hold hold;
+            try {
+                hold = seatHoldService.hold(customerName, phone, tripId, Integer.parseInt(ticketsStr));
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                sendMessage("HOLD_FAILED");
+                return;
+            }
+            sendMessage("HOLD_SUCCESS#" + hold.getId() + "#" + hold.getExpiresAtMillis());
+            server.publishSeats(tripId);
+        } catch (Exception e) {
+            sendMessage("HOLD_FAILED#" + e.getMessage());
+            System.err.println("Error in hold: " + e.getMessage());
+        }
+    }
 
-            trip.setAvailableSeats(trip.getAvailableSeats() - tickets);
-            tripService.update(trip.getId(), trip);
+    private void confirmHold(String holdId) {
+        try {
+            Reservation reservation;
+            try {
+                reservation = seatHoldService.confirm(holdId);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                sendMessage("RESERVATION_FAILED#" + e.getMessage());
+                return;
+            }
 
-            out.println("RESERVATION_SUCCESS");
-            server.broadcastUpdate("UPDATE_TRIPS");
+            if (binaryOutput) {
+                sendFrame(BinaryProtocol.encodeReservation(reservation));
+            } else {
+                sendMessage("RESERVATION_SUCCESS");
+            }
+        } catch (Exception e) {
+            sendMessage("RESERVATION_FAILED#" + e.getMessage());
+            System.err.println("Error confirming hold: " + e.getMessage());
+        }
+    }
+
+    private void releaseHold(String holdId) {
+        SeatHoldService.Hold hold = seatHoldService.release(holdId);
+        if (hold == null) {
+            sendMessage("HOLD_RELEASE_FAILED");
+            return;
+        }
+        sendMessage("HOLD_RELEASED");
+        server.publishSeats(hold.getTripId());
+    }
+
+    private void cancelReservation(String reservationIdStr) {
+        try {
+            Reservation reservation = bookingService.cancel(Integer.parseInt(reservationIdStr));
+            if (reservation == null) {
+                sendMessage("CANCEL_FAILED#Reservation not found");
+                return;
+            }
+            sendMessage("CANCEL_SUCCESS");
+            server.publishSeats(reservation.getTrip());
         } catch (NumberFormatException e) {
-            out.println("RESERVATION_FAILED#Invalid number format");
-            System.err.println("Error in reservation: " + e.getMessage());
+            sendMessage("CANCEL_FAILED#Invalid number format");
         } catch (Exception e) {
-            out.println("RESERVATION_FAILED#" + e.getMessage());
-            System.err.println("Error in reservation: " + e.getMessage());
+            sendMessage("CANCEL_FAILED#" + e.getMessage());
+            System.err.println("Error cancelling reservation: " + e.getMessage());
+        }
+    }
+
+    /** The client learns about the promotion from the WAITLIST_PROMOTED broadcast carrying its entry id. */
+    private void joinWaitlist(String customerName, String phone, String tripIdStr, String ticketsStr) {
+        try {
+            int tripId = Integer.parseInt(tripIdStr);
+            WaitlistService.Entry entry = waitlistService.join(customerName, phone, tripId, Integer.parseInt(ticketsStr));
+            sendMessage("WAITLIST_JOINED#" + entry.getId() + "#" + waitlistService.waiting(tripId));
+        } catch (NumberFormatException e) {
+            sendMessage("WAITLIST_FAILED#Invalid number format");
+        } catch (IllegalArgumentException e) {
+            sendMessage("WAITLIST_FAILED#" + e.getMessage());
+        }
+    }
+
+    private void leaveWaitlist(String entryIdStr) {
+        try {
+            sendMessage(waitlistService.leave(Long.parseLong(entryIdStr)) != null ? "WAITLIST_LEFT" : "WAITLIST_LEAVE_FAILED");
+        } catch (NumberFormatException e) {
+            sendMessage("WAITLIST_LEAVE_FAILED#Invalid number format");
+        }
+    }
+
+    private void setFlashMode(String tripIdStr, String enabledStr) {
+        try {
+            int tripId = Integer.parseInt(tripIdStr);
+            bookingService.setFlashMode(tripId, Boolean.parseBoolean(enabledStr));
+            sendMessage("FLASH_MODE#" + tripId + "#" + bookingService.isFlashMode(tripId));
+        } catch (NumberFormatException e) {
+            sendMessage("FLASH_MODE_FAILED#Invalid number format");
         }
     }
 
@@ -153,30 +512,34 @@ public class ClientHandler implements Runnable {
                 case "ADD":
                     Trip newTrip = parseTripFromString(tripData);
                     tripService.save(id, newTrip);
+                    sendMessage("TRIP_ADD_SUCCESS");
+                    server.publishTripChange(TripCatalog.TRIP_ADDED, newTrip);
                     break;
                 case "UPDATE":
                     Trip updatedTrip = parseTripFromString(tripData);
-                    if (fields.length > 6) {
-                        int oldId = Integer.parseInt(fields[6]);
-                        if (oldId != id) {
-                            tripService.delete(oldId);
-                        }
+                    int oldId = fields.length > 6 ? Integer.parseInt(fields[6]) : id;
+                    if (oldId != id) {
+                        tripService.delete(oldId);
                     }
 
                     tripService.update(id, updatedTrip);
+                    sendMessage("TRIP_UPDATE_SUCCESS");
+                    if (oldId != id) {
+                        server.publishTripRemoved(oldId);
+                    }
+                    server.publishTripChange(TripCatalog.TRIP_CHANGED, updatedTrip);
                     break;
                 case "DELETE":
                     tripService.delete(id);
+                    sendMessage("TRIP_DELETE_SUCCESS");
+                    server.publishTripRemoved(id);
                     break;
             }
-
-            out.println("TRIP_" + operation + "_SUCCESS");
-            server.broadcastUpdate("UPDATE_TRIPS");
         } catch (NumberFormatException e) {
-            out.println("TRIP_" + operation + "_FAILED#Invalid number format");
+            sendMessage("TRIP_" + operation + "_FAILED#Invalid number format");
             System.err.println("Error in trip " + operation + ": " + e.getMessage());
         } catch (Exception e) {
-            out.println("TRIP_" + operation + "_FAILED#" + e.getMessage());
+            sendMessage("TRIP_" + operation + "_FAILED#" + e.getMessage());
             System.err.println("Error in trip " + operation + ": " + e.getMessage());
         }
     }
@@ -206,13 +569,13 @@ public class ClientHandler implements Runnable {
                     break;
             }
 
-            out.println("USER_" + operation + "_SUCCESS");
+            sendMessage("USER_" + operation + "_SUCCESS");
             server.broadcastUpdate("UPDATE_USERS");
         } catch (NumberFormatException e) {
-            out.println("USER_" + operation + "_FAILED#Invalid number format");
+            sendMessage("USER_" + operation + "_FAILED#Invalid number format");
             System.err.println("Error in user " + operation + ": " + e.getMessage());
         } catch (Exception e) {
-            out.println("USER_" + operation + "_FAILED#" + e.getMessage());
+            sendMessage("USER_" + operation + "_FAILED#" + e.getMessage());
             System.err.println("Error in user " + operation + ": " + e.getMessage());
         }
     }
@@ -227,16 +590,29 @@ public class ClientHandler implements Runnable {
             } else {
                 trips = tripService.findAll();
             }
-
-            StringBuilder sb = new StringBuilder();
-            trips.forEach(trip -> sb.append(formatTrip(trip)).append(";"));
-            out.println("SEARCH_RESULTS#" + sb);
+            if (dropSuperseded(tripSearches)) {
+                return;
+            }
+            sendTripList("SEARCH_RESULTS#", BinaryProtocol.OP_SEARCH_RESULTS, trips);
         } catch (Exception e) {
-            out.println("SEARCH_FAILED#" + e.getMessage());
+            sendMessage("SEARCH_FAILED#" + e.getMessage());
             System.err.println("Error in trip search: " + e.getMessage());
         }
     }
 
+    private void searchUsers(String username) {
+        try {
+            List<User> users = userService.findAllByUsernameContaining(username);
+            if (dropSuperseded(userSearches)) {
+                return;
+            }
+            sendUserList(users);
+        } catch (Exception e) {
+            sendMessage("SEARCH_FAILED#" + e.getMessage());
+            System.err.println("Error in user search: " + e.getMessage());
+        }
+    }
+
     private Trip parseTripFromString(String tripData) {
         String[] fields = tripData.split(",");
         int id = Integer.parseInt(fields[0]);
@@ -258,38 +634,47 @@ public class ClientHandler implements Runnable {
         return new User(id, username, password);
     }
 
-    private int generateReservationId() {
-        int max = 0;
-        List<Reservation> reservations = reservationService.findByTripId(null);
-        for (Reservation r : reservations) {
-            if (r.getId() > max) {
-                max = r.getId();
+    /** Sends a reply; tagged with the current request id, if any. */
+    public void sendMessage(String message) {
+        String requestId = REQUEST_ID.get();
+        sendLock.lock();
+        try {
+            if (binaryOutput) {
+                sendFrame(BinaryProtocol.encodeMessage(message));
+            } else {
+                connection.send(requestId == null ? message : "@" + requestId + "#" + message);
             }
+        } finally {
+            sendLock.unlock();
         }
-        return max + 1;
     }
 
-    private int generateCustomerId() {
-        int max = 0;
-        List<Customer> customers = customerService.findAll();
-        for (Customer c : customers) {
-            if (c.getId() > max) {
-                max = c.getId();
-            }
+    /** Binary protocol only: sends a reply frame, wrapped in OP_REPLY for a tagged request. */
+    private void sendFrame(ByteBuffer frame) {
+        String requestId = REQUEST_ID.get();
+        connection.send(requestId == null ? frame : BinaryProtocol.encodeReply(requestId, frame));
+    }
+
+    /** Queues a message that was encoded once for each protocol; neither buffer is modified. A null key marks a reply. */
+    void sendEncoded(ByteBuffer line, ByteBuffer frame, String coalesceKey) {
+        sendLock.lock();
+        try {
+            connection.send(binaryOutput ? frame : line, coalesceKey);
+        } finally {
+            sendLock.unlock();
         }
-        return max + 1;
     }
 
-    public void sendMessage(String message) {
-        out.println(message);
+    int getQueuedMessages() {
+        return connection.getQueuedMessages();
+    }
+
+    public String getRemoteAddress() {
+        return connection.getRemoteAddress();
     }
 
     private void closeConnection() {
-        try {
-            socket.close();
-            server.removeClient(this);
-        } catch (IOException e) {
-            System.err.println("❌ Error closing socket: " + e.getMessage());
-        }
+        connection.close();
+        server.removeClient(this);
     }
 }
\ No newline at end of file
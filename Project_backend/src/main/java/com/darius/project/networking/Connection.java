@@ -0,0 +1,31 @@
+package com.darius.project.networking;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Transport seen by a {@link ClientHandler}: where its replies go and how the link is torn down.
+ * Implemented by the blocking socket path and by the selector-based NIO path.
+ * Sends never block on the socket; messages go through the connection's {@link OutboundQueue}.
+ */
+public interface Connection {
+    /**
+     * Queues raw bytes as-is, e.g. a {@link BinaryProtocol} frame; the buffer is not modified.
+     * {@code coalesceKey} marks a broadcast notification (see {@link OutboundQueue}), null for a reply.
+     */
+    void send(ByteBuffer data, String coalesceKey);
+
+    default void send(ByteBuffer data) {
+        send(data, null);
+    }
+
+    /** Sends one line of the text protocol as a reply. */
+    default void send(String message) {
+        send(ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Messages queued and not yet handed to the socket. */
+    int getQueuedMessages();
+
+    void close();
+    String getRemoteAddress();
+}
@@ -0,0 +1,41 @@
+package com.darius.project.networking;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads '\n'-terminated UTF-8 lines straight from a byte stream without reading ahead, so the same
+ * stream can be handed to {@link BinaryProtocol#readFrame} once a connection switches protocols.
+ */
+public class LineReader {
+    private final InputStream in;
+    private final int maxLineBytes;
+    private byte[] buffer = new byte[256];
+
+    public LineReader(InputStream in, int maxLineBytes) {
+        this.in = in;
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    /** Returns the next line without its terminator, or null at end of stream. */
+    public String readLine() throws IOException {
+        int length = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                if (length > 0 && buffer[length - 1] == '\r') {
+                    length--;
+                }
+                return new String(buffer, 0, length, StandardCharsets.UTF_8);
+            }
+            if (length == buffer.length) {
+                if (length >= maxLineBytes) {
+                    throw new IOException("Line exceeds " + maxLineBytes + " bytes");
+                }
+                buffer = Arrays.copyOf(buffer, Math.min(length * 2, maxLineBytes));
+            }
+            buffer[length++] = (byte) b;
+        }
+        return length == 0 ? null : new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,294 @@
+package com.darius.project.networking;
+import org.slf4j.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking {@link Connection} driven by a {@link SelectorLoop}.
+ * <p>
+ * Inbound bytes are framed into requests on the selector thread ('\n'-terminated lines, or length-prefixed
+ * {@link BinaryProtocol} frames once the client sends {@link BinaryProtocol#SWITCH_COMMAND}) and handed to the
+ * worker pool one connection at a time, so requests from one client are still processed in the order they were sent.
+ * Outbound messages go through a bounded {@link OutboundQueue} and are written by the selector thread when the
+ * socket is writable.
+ */
+public class NioConnection implements Connection {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioConnection.class);
+    private static final int DRAIN_BATCH = 64;
+    private static final int MAX_PENDING_REQUESTS = 256;
+
+    private final SocketChannel channel;
+    private final SelectorLoop loop;
+    private final Executor workers;
+    private final Server server;
+    private final int maxRequestBytes;
+    private final String remoteAddress;
+    private ClientHandler handler;
+    private SelectionKey key;
+
+    // Touched only by the selector thread.
+    private byte[] requestBuffer = new byte[256];
+    private int requestLength = 0;
+    private boolean binaryFraming = false;
+    private int frameLength = -1;
+    private boolean readPaused = false;
+
+    private final Queue<String[]> inbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final OutboundQueue outbound;
+    private ByteBuffer writing; // selector thread only: message partially written to the socket
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+
+    public NioConnection(SocketChannel channel, SelectorLoop loop, Executor workers, Server server, int maxRequestBytes, OutboundQueue outbound) {
+        this.channel = channel;
+        this.loop = loop;
+        this.workers = workers;
+        this.server = server;
+        this.maxRequestBytes = maxRequestBytes;
+        this.outbound = outbound;
+        String address;
+        try {
+            address = String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            address = "unknown";
+        }
+        this.remoteAddress = address;
+    }
+
+    void setHandler(ClientHandler handler) { this.handler = handler; }
+    void attach(SelectionKey key) { this.key = key; }
+    SocketChannel getChannel() { return channel; }
+
+    @Override
+    public String getRemoteAddress() { return remoteAddress; }
+
+    // ---- inbound (selector thread) ----
+
+    void onBytesRead(ByteBuffer buffer) {
+        while (buffer.hasRemaining() && !closed) {
+            if (binaryFraming) {
+                readFrameBytes(buffer);
+            } else {
+                readLineBytes(buffer);
+            }
+        }
+        if (closed) {
+            return;
+        }
+        if (!inbound.isEmpty()) {
+            scheduleDrain();
+            if (inbound.size() > MAX_PENDING_REQUESTS && !readPaused) {
+                // The client is sending faster than we can serve it; stop reading until the backlog clears.
+                readPaused = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    /** Consumes bytes up to and including the next '\n'; stops there because the line may switch framing. */
+    private void readLineBytes(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                int length = requestLength;
+                if (length > 0 && requestBuffer[length - 1] == '\r') {
+                    length--;
+                }
+                String line = new String(requestBuffer, 0, length, StandardCharsets.UTF_8);
+                requestLength = 0;
+                if (line.equals(BinaryProtocol.SWITCH_COMMAND)) {
+                    // Everything after this line is framed; the handler still sees the command and acknowledges it.
+                    binaryFraming = true;
+                }
+                inbound.add(line.split("#"));
+                return;
+            }
+            if (!ensureCapacity(requestLength + 1)) {
+                return;
+            }
+            requestBuffer[requestLength++] = b;
+        }
+    }
+
+    private void readFrameBytes(ByteBuffer buffer) {
+        if (frameLength < 0) {
+            while (requestLength < 4 && buffer.hasRemaining()) {
+                requestBuffer[requestLength++] = buffer.get();
+            }
+            if (requestLength < 4) {
+                return;
+            }
+            int length = ByteBuffer.wrap(requestBuffer, 0, 4).getInt();
+            if (length < 1 || length > maxRequestBytes) {
+                LOGGER.warn("Invalid frame length {} from {}, closing connection", length, remoteAddress);
+                closeNow();
+                return;
+            }
+            frameLength = length;
+            requestLength = 0;
+            if (!ensureCapacity(length)) {
+                return;
+            }
+        }
+        int chunk = Math.min(frameLength - requestLength, buffer.remaining());
+        buffer.get(requestBuffer, requestLength, chunk);
+        requestLength += chunk;
+        if (requestLength == frameLength) {
+            try {
+                inbound.add(BinaryProtocol.decodeCommand(requestBuffer, 0, frameLength));
+            } catch (IOException e) {
+                LOGGER.warn("Malformed frame from {}, closing connection: {}", remoteAddress, e.getMessage());
+                closeNow();
+                return;
+            }
+            frameLength = -1;
+            requestLength = 0;
+        }
+    }
+
+    private boolean ensureCapacity(int needed) {
+        if (needed <= requestBuffer.length) {
+            return true;
+        }
+        if (needed > maxRequestBytes) {
+            LOGGER.warn("Request from {} exceeds {} bytes, closing connection", remoteAddress, maxRequestBytes);
+            closeNow();
+            return false;
+        }
+        requestBuffer = Arrays.copyOf(requestBuffer, Math.min(Math.max(requestBuffer.length * 2, needed), maxRequestBytes));
+        return true;
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                workers.execute(this::drainInbound);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                LOGGER.error("Worker pool rejected requests from {}: {}", remoteAddress, e.getMessage());
+            }
+        }
+    }
+
+    // ---- request processing (worker thread) ----
+
+    private void drainInbound() {
+        try {
+            String[] request;
+            int processed = 0;
+            while (processed < DRAIN_BATCH && !closed && (request = inbound.poll()) != null) {
+                try {
+                    handler.handleRequest(request);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Error handling request from {}: {}", remoteAddress, e.getMessage(), e);
+                }
+                processed++;
+            }
+        } finally {
+            draining.set(false);
+            if (readPaused && inbound.size() <= MAX_PENDING_REQUESTS / 2) {
+                loop.execute(this::resumeReading);
+            }
+            if (!inbound.isEmpty() && !closed) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private void resumeReading() {
+        if (readPaused && key != null && key.isValid()) {
+            readPaused = false;
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    // ---- outbound ----
+
+    @Override
+    public void send(ByteBuffer data, String coalesceKey) {
+        if (closed) {
+            return;
+        }
+        // Duplicate so one encoded frame can be handed to many connections.
+        if (!outbound.offer(data.duplicate(), coalesceKey)) {
+            LOGGER.warn("Outbound queue of {} is full, disconnecting slow client", remoteAddress);
+            close();
+            return;
+        }
+        if (writeScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flushFromTask);
+        }
+    }
+
+    @Override
+    public int getQueuedMessages() {
+        return outbound.size();
+    }
+
+    private void flushFromTask() {
+        try {
+            flush();
+        } catch (IOException e) {
+            LOGGER.debug("Write to {} failed: {}", remoteAddress, e.getMessage());
+            closeNow();
+        }
+    }
+
+    /** Selector thread only: write as much as the socket accepts, keeping OP_WRITE while data remains. */
+    void flush() throws IOException {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        while (writing != null || (writing = outbound.poll()) != null) {
+            channel.write(writing);
+            if (writing.hasRemaining()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            writing = null;
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        writeScheduled.set(false);
+        // A sender may have queued after our last poll but before the flag was cleared.
+        if (outbound.size() > 0 && writeScheduled.compareAndSet(false, true)) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    // ---- lifecycle ----
+
+    @Override
+    public void close() {
+        loop.execute(this::closeNow);
+    }
+
+    /** Selector thread only. */
+    void closeNow() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.error("Error closing channel {}: {}", remoteAddress, e.getMessage());
+        }
+        inbound.clear();
+        outbound.close();
+        writing = null;
+        if (handler != null) {
+            server.removeClient(handler);
+        }
+        System.out.println("🔌 Client disconnected: " + remoteAddress);
+    }
+}
@@ -0,0 +1,17 @@
+package com.darius.project.networking;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Server-wide counters for what {@link OutboundQueue}s had to give up on. */
+public class OutboundMetrics {
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder slowDisconnects = new LongAdder();
+
+    void recordDropped() { dropped.increment(); }
+    void recordCoalesced() { coalesced.increment(); }
+    void recordSlowDisconnect() { slowDisconnects.increment(); }
+
+    public long getDropped() { return dropped.sum(); }
+    public long getCoalesced() { return coalesced.sum(); }
+    public long getSlowDisconnects() { return slowDisconnects.sum(); }
+}
@@ -0,0 +1,153 @@
+package com.darius.project.networking;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Bounded queue of encoded messages waiting to be written to one client, filled by any thread and drained by
+ * that connection's writer (the selector thread in NIO mode, a dedicated writer thread otherwise).
+ * <p>
+ * Broadcast notifications carry a coalesce key; direct replies do not and are never dropped, since the client
+ * is waiting for them (request backpressure already bounds how many can pile up). When the queue is full the
+ * {@link OverflowPolicy} decides what gives.
+ */
+public class OutboundQueue {
+
+    public enum OverflowPolicy {
+        /** Drop the oldest queued notification to make room. */
+        DROP_OLDEST,
+        /** Skip a notification identical to one still queued; otherwise behave like {@link #DROP_OLDEST}. */
+        COALESCE,
+        /** Give up on the client. */
+        DISCONNECT;
+
+        /** Accepts the config spelling, e.g. "drop-oldest". */
+        public static OverflowPolicy fromConfig(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private static final class Entry {
+        private final ByteBuffer data;
+        private final String coalesceKey;
+
+        private Entry(ByteBuffer data, String coalesceKey) {
+            this.data = data;
+            this.coalesceKey = coalesceKey;
+        }
+    }
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final OutboundMetrics metrics;
+    private boolean closed = false;
+
+    public OutboundQueue(int capacity, OverflowPolicy policy, OutboundMetrics metrics) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues a message; {@code coalesceKey} is null for direct replies.
+     * Returns false when the client cannot keep up and has to be disconnected.
+     */
+    public boolean offer(ByteBuffer data, String coalesceKey) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            if (entries.size() >= capacity) {
+                if (policy == OverflowPolicy.DISCONNECT) {
+                    metrics.recordSlowDisconnect();
+                    return false;
+                }
+                if (policy == OverflowPolicy.COALESCE && coalesceKey != null && containsKey(coalesceKey)) {
+                    metrics.recordCoalesced();
+                    return true;
+                }
+                if (!dropOldestNotification()) {
+                    // Nothing but replies queued: the client is not reading at all.
+                    metrics.recordSlowDisconnect();
+                    return false;
+                }
+                metrics.recordDropped();
+            }
+            entries.addLast(new Entry(data, coalesceKey));
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean containsKey(String coalesceKey) {
+        for (Entry entry : entries) {
+            if (coalesceKey.equals(entry.coalesceKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean dropOldestNotification() {
+        Iterator<Entry> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().coalesceKey != null) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Next message, or null if none is queued. */
+    public ByteBuffer poll() {
+        lock.lock();
+        try {
+            Entry entry = entries.pollFirst();
+            return entry == null ? null : entry.data;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Waits for the next message; returns null once the queue is closed. */
+    public ByteBuffer take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (entries.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            Entry entry = entries.pollFirst();
+            return entry == null ? null : entry.data;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Discards queued messages and wakes the writer; later offers are ignored. */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            entries.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.darius.project.networking;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.*;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports virtual threads that block while pinned to their carrier (inside a {@code synchronized} block
+ * or a native frame such as the SQLite JDBC driver). Uses the JDK's {@code jdk.VirtualThreadPinned}
+ * JFR event, so it costs nothing until a pin longer than the threshold actually happens.
+ */
+public class PinningMonitor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PinningMonitor.class);
+    private static final int MAX_FRAMES = 8;
+
+    private final Duration threshold;
+    private final AtomicLong pinnedEvents = new AtomicLong();
+    private final AtomicLong pinnedNanos = new AtomicLong();
+    private RecordingStream stream;
+
+    public PinningMonitor(Duration threshold) {
+        this.threshold = threshold;
+    }
+
+    public void start() {
+        try {
+            stream = new RecordingStream();
+            stream.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+            stream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+            stream.startAsync();
+            LOGGER.info("Virtual thread pinning monitor started (threshold {} ms)", threshold.toMillis());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not start pinning monitor, JFR unavailable: {}", e.getMessage());
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        long count = pinnedEvents.incrementAndGet();
+        pinnedNanos.addAndGet(event.getDuration().toNanos());
+        if (LOGGER.isWarnEnabled()) {
+            LOGGER.warn("Virtual thread pinned for {} ms (#{}) at:{}", event.getDuration().toMillis(), count, formatStack(event.getStackTrace()));
+        }
+    }
+
+    private String formatStack(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return " <no stack trace>";
+        }
+        StringBuilder sb = new StringBuilder();
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        for (int i = 0; i < Math.min(MAX_FRAMES, frames.size()); i++) {
+            RecordedFrame frame = frames.get(i);
+            sb.append("\n\tat ").append(frame.getMethod().getType().getName())
+                    .append('.').append(frame.getMethod().getName())
+                    .append(':').append(frame.getLineNumber());
+        }
+        return sb.toString();
+    }
+
+    public long getPinnedEvents() { return pinnedEvents.get(); }
+
+    public long getPinnedMillis() { return pinnedNanos.get() / 1_000_000; }
+
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
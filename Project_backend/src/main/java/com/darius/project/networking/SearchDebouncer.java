@@ -0,0 +1,107 @@
+package com.darius.project.networking;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Latest-wins slot for one connection's searches of one kind. A search waits out the debounce delay and is
+ * replaced by any newer search submitted meanwhile, so a burst of keystrokes runs a single query. A search that
+ * is already running cannot be interrupted, but {@link #isSuperseded()} lets it drop its result once a newer one
+ * has arrived.
+ */
+final class SearchDebouncer {
+    // Generation of the search running on this thread, if any.
+    private static final ThreadLocal<Long> RUNNING = new ThreadLocal<>();
+
+    private final Server server;
+    private final long delayNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long generation = 0;
+    private Pending pending;
+    private boolean timerScheduled = false;
+
+    private static final class Pending {
+        private final long generation;
+        private final Runnable search;
+        private final Runnable onSuperseded;
+        private final long dueNanos;
+
+        private Pending(long generation, Runnable search, Runnable onSuperseded, long dueNanos) {
+            this.generation = generation;
+            this.search = search;
+            this.onSuperseded = onSuperseded;
+            this.dueNanos = dueNanos;
+        }
+    }
+
+    SearchDebouncer(Server server, long delayMillis) {
+        this.server = server;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    /**
+     * Queues {@code search} to run on the server's read executor, replacing the queued one, whose
+     * {@code onSuperseded} runs instead so a tagged request still gets an answer.
+     */
+    void submit(Runnable search, Runnable onSuperseded) {
+        Pending replaced;
+        lock.lock();
+        try {
+            replaced = pending;
+            pending = new Pending(++generation, search, onSuperseded, System.nanoTime() + delayNanos);
+            if (!timerScheduled) {
+                timerScheduled = true;
+                server.scheduleSearch(this::fire, delayNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (replaced != null) {
+            replaced.onSuperseded.run();
+        }
+    }
+
+    /** True inside a search that a newer submission has replaced; its result should not be sent. */
+    boolean isSuperseded() {
+        Long running = RUNNING.get();
+        lock.lock();
+        try {
+            return running != null && running != generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fire() {
+        Pending due;
+        lock.lock();
+        try {
+            due = pending;
+            if (due == null) {
+                timerScheduled = false;
+                return;
+            }
+            long remaining = due.dueNanos - System.nanoTime();
+            if (remaining > 0) {
+                // A newer search pushed the deadline back; wait for the typing to pause.
+                server.scheduleSearch(this::fire, remaining);
+                return;
+            }
+            pending = null;
+            timerScheduled = false;
+        } finally {
+            lock.unlock();
+        }
+        server.executeRead(() -> {
+            RUNNING.set(due.generation);
+            try {
+                if (isSuperseded()) {
+                    due.onSuperseded.run();
+                } else {
+                    due.search.run();
+                }
+            } finally {
+                RUNNING.remove();
+            }
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package com.darius.project.networking;
+import org.slf4j.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One selector thread serving many {@link NioConnection}s. All channel I/O and interest-op changes
+ * happen on this thread; other threads hand work over through {@link #execute(Runnable)}.
+ */
+public class SelectorLoop implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorLoop.class);
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final String name;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Shared by every connection on this loop; the bytes are copied into the connection's line buffer.
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private volatile boolean running = true;
+
+    public SelectorLoop(String name) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+    }
+
+    public String getName() { return name; }
+
+    public void register(NioConnection connection) {
+        execute(() -> {
+            try {
+                SelectionKey key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+                connection.attach(key);
+            } catch (IOException e) {
+                LOGGER.error("[{}] Error registering connection {}: {}", name, connection.getRemoteAddress(), e.getMessage());
+                connection.closeNow();
+            }
+        });
+    }
+
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        LOGGER.info("[{}] Selector loop started", name);
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            } catch (IOException e) {
+                LOGGER.error("[{}] Selector error: {}", name, e.getMessage(), e);
+            }
+        }
+        closeAll();
+        LOGGER.info("[{}] Selector loop stopped", name);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("[{}] Error running selector task: {}", name, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                readBuffer.clear();
+                int read = connection.getChannel().read(readBuffer);
+                if (read < 0) {
+                    connection.closeNow();
+                    return;
+                }
+                readBuffer.flip();
+                connection.onBytesRead(readBuffer);
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (IOException | CancelledKeyException e) {
+            LOGGER.debug("[{}] Connection {} dropped: {}", name, connection.getRemoteAddress(), e.getMessage());
+            connection.closeNow();
+        } catch (RuntimeException e) {
+            // A bug or a malformed frame in one connection must not end the loop and strand the others.
+            LOGGER.error("[{}] Error handling connection {}, closing it: {}", name, connection.getRemoteAddress(), e.getMessage(), e);
+            connection.closeNow();
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection connection) {
+                connection.closeNow();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.error("[{}] Error closing selector: {}", name, e.getMessage());
+        }
+    }
+}
@@ -1,29 +1,127 @@
 package com.darius.project.networking;
+import com.darius.project.domain.Trip;
+import com.darius.project.repository.Database.Config;
+import com.darius.project.service.AdmissionControl;
+import com.darius.project.service.RateLimiter;
+import com.darius.project.service.ServiceContainer;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 
 public class Server {
-    private final int PORT = 5556;
-    private ServerSocket serverSocket;
+    private final int PORT = Config.getIntProperty("server.port", 5556);
+    private final String ioMode = Config.getProperty("server.io.mode", "nio");
+    private final int maxRequestBytes = Config.getIntProperty("server.max.request.bytes", 1024 * 1024);
+    private final int outboundCapacity = Config.getIntProperty("server.outbound.queue.capacity", 1024);
+    private final OutboundQueue.OverflowPolicy overflowPolicy =
+            OutboundQueue.OverflowPolicy.fromConfig(Config.getProperty("server.outbound.overflow.policy", "drop-oldest"));
+    private final OutboundMetrics outboundMetrics = new OutboundMetrics();
+    // One token bucket per connection; see ClientHandler for which commands take a token.
+    private final RateLimiter<ClientHandler> requestLimiter = new RateLimiter<>(Config.getIntProperty("ratelimit.socket.per.second", 20),
+            Config.getIntProperty("ratelimit.socket.burst", 40));
+    // One thread fans broadcasts out to the client queues, so publishing costs the caller a single enqueue.
+    private final ThreadPoolExecutor broadcaster = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "broadcaster");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Fires debounced searches; the searches themselves run on the read executor.
+    private final ScheduledExecutorService searchTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long searchDebounceMillis = Config.getIntProperty("server.search.debounce.ms", 150);
     private final CopyOnWriteArrayList<ClientHandler> clients;
+    private Semaphore requestPermits;
+    private ExecutorService readExecutor;
+    // Guards catalogVersion: events are handed to the broadcaster in version order, and a snapshot is queued
+    // under the version it was read at.
+    private final ReentrantLock catalogLock = new ReentrantLock();
+    private long catalogVersion = 0;
+    private final TripEventLog eventLog = new TripEventLog(Config.getIntProperty("server.event.log.capacity", 1024));
+    // Issued session tokens, least recently used first; a resume with an evicted token gets a full reload.
+    private final int maxSessions = Config.getIntProperty("server.session.max", 4096);
+    private final Map<String, Boolean> sessions = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > maxSessions;
+        }
+    });
+
+    private final ServiceContainer services;
 
     public Server() {
+        this(new ServiceContainer("socket-server"));
+    }
+
+    public Server(ServiceContainer services) {
+        this.services = services;
         clients = new CopyOnWriteArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(services::close));
+    }
+
+    public void start() {
+        // Expiries fire on the hold wheel's thread; the trip lookup and publish happen on the broadcaster instead.
+        services.getSeatHoldService().addExpiryListener(tripId -> broadcaster.execute(() -> publishSeats(tripId)));
+        services.getWaitlistService().addPromotionListener((entry, reservation) -> {
+            broadcastUpdate("WAITLIST_PROMOTED#" + entry.getTripId() + "#" + entry.getId() + "#" + reservation.getId());
+            broadcaster.execute(() -> publishSeats(entry.getTripId()));
+        });
+        startStatsReporter(Config.getIntProperty("server.outbound.stats.interval.s", 60));
+        if ("blocking".equalsIgnoreCase(ioMode)) {
+            startBlocking(false);
+        } else if ("virtual".equalsIgnoreCase(ioMode)) {
+            startBlocking(true);
+        } else {
+            startNio();
+        }
+    }
+
+    /**
+     * Thread-per-connection mode. With platform threads each client holds a pool thread for as long as it
+     * stays connected; with virtual threads the same blocking code parks instead, so idle clients and
+     * socket waits no longer consume OS threads.
+     */
+    private void startBlocking(boolean virtualThreads) {
+        ServerSocket serverSocket;
         try {
             serverSocket = new ServerSocket(PORT);
-            System.out.println("🚀 Server started on port " + PORT);
+            System.out.println("🚀 Server started on port " + PORT + (virtualThreads ? " (virtual threads)" : " (blocking I/O)"));
         } catch (IOException e) {
             System.err.println("❌ Error starting server: " + e.getMessage());
+            return;
+        }
+        ExecutorService pool;
+        if (virtualThreads) {
+            pool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("client-", 1).factory());
+            readExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("read-", 1).factory());
+            // SQLite JDBC runs in native code, which pins the carrier; cap concurrent requests so
+            // DB-bound handlers cannot occupy every carrier thread at once.
+            requestPermits = new Semaphore(Config.getIntProperty("server.virtual.max.concurrent.requests", Runtime.getRuntime().availableProcessors()));
+            PinningMonitor pinningMonitor = new PinningMonitor(Duration.ofMillis(Config.getIntProperty("server.virtual.pinned.threshold.ms", 20)));
+            pinningMonitor.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.out.println("📌 Virtual thread pinning: " + pinningMonitor.getPinnedEvents() + " events, " + pinningMonitor.getPinnedMillis() + " ms pinned");
+                pinningMonitor.stop();
+            }));
+        } else {
+            pool = Executors.newFixedThreadPool(Config.getIntProperty("server.worker.threads", 20));
+            readExecutor = Executors.newFixedThreadPool(Config.getIntProperty("server.read.threads", 4));
         }
-    }
-
-    public void start() {
-        ExecutorService pool = Executors.newFixedThreadPool(20);
         while (true) {
             try {
                 Socket clientSocket = serverSocket.accept();
-                ClientHandler handler = new ClientHandler(clientSocket, this);
+                ClientHandler handler = new ClientHandler(clientSocket, this, services, maxRequestBytes, newOutboundQueue());
                 clients.add(handler);
                 pool.execute(handler);
                 System.out.println("✅ New client connected: " + clientSocket.getInetAddress());
@@ -33,17 +131,270 @@ public class Server {
         }
     }
 
-    public void broadcastUpdate(String message) {
+    /**
+     * Selector mode: a few selector threads own all sockets and only parse lines; commands run on a
+     * bounded worker pool, so connected-but-idle clients cost a buffer instead of a thread.
+     */
+    private void startNio() {
+        int selectorThreads = Config.getIntProperty("server.selector.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        int workerThreads = Config.getIntProperty("server.worker.threads", 20);
+
+        AtomicInteger workerIds = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "server-worker-" + workerIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        readExecutor = workers;
+
+        SelectorLoop[] loops = new SelectorLoop[selectorThreads];
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open();
+             Selector acceptSelector = Selector.open()) {
+            for (int i = 0; i < selectorThreads; i++) {
+                loops[i] = new SelectorLoop("selector-" + (i + 1));
+                Thread thread = new Thread(loops[i], loops[i].getName());
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            serverChannel.bind(new InetSocketAddress(PORT));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+            System.out.println("🚀 Server started on port " + PORT + " (NIO, " + selectorThreads + " selector threads, " + workerThreads + " workers)");
+
+            int next = 0;
+            while (true) {
+                acceptSelector.select();
+                Iterator<SelectionKey> keys = acceptSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    keys.next();
+                    keys.remove();
+                    SocketChannel channel;
+                    while ((channel = serverChannel.accept()) != null) {
+                        try {
+                            channel.configureBlocking(false);
+                            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                            SelectorLoop loop = loops[next++ % loops.length];
+                            NioConnection connection = new NioConnection(channel, loop, workers, this, maxRequestBytes, newOutboundQueue());
+                            ClientHandler handler = new ClientHandler(connection, this, services);
+                            connection.setHandler(handler);
+                            clients.add(handler);
+                            loop.register(connection);
+                            System.out.println("✅ New client connected: " + connection.getRemoteAddress() + " on " + loop.getName());
+                        } catch (IOException e) {
+                            System.err.println("❌ Error accepting client: " + e.getMessage());
+                            closeQuietly(channel);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Error starting server: " + e.getMessage());
+        } finally {
+            for (SelectorLoop loop : loops) {
+                if (loop != null) loop.shutdown();
+            }
+            workers.shutdown();
+        }
+    }
+
+    OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(outboundCapacity, overflowPolicy, outboundMetrics);
+    }
+
+    private void startStatsReporter(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outbound-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            System.out.println("📊 Outbound: " + describeOutboundStats());
+            System.out.println("📊 Admission: " + describeAdmissionStats());
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /** One line of queue metrics, also returned to clients by the STATS command. */
+    String describeOutboundStats() {
+        int queued = 0;
+        int deepest = 0;
         for (ClientHandler client : clients) {
-            client.sendMessage(message);
+            int depth = client.getQueuedMessages();
+            queued += depth;
+            deepest = Math.max(deepest, depth);
+        }
+        return "clients=" + clients.size() + ",queued=" + queued + ",deepest=" + deepest + ",capacity=" + outboundCapacity
+                + ",policy=" + overflowPolicy + ",pendingBroadcasts=" + broadcaster.getQueue().size()
+                + ",dropped=" + outboundMetrics.getDropped() + ",coalesced=" + outboundMetrics.getCoalesced()
+                + ",slowDisconnects=" + outboundMetrics.getSlowDisconnects();
+    }
+
+    /** Rate limiting and admission counters, appended to the STATS reply. */
+    String describeAdmissionStats() {
+        AdmissionControl admission = services.getAdmissionControl();
+        return "rateLimited=" + requestLimiter.getRejected() + ",admitted=" + admission.getAdmitted()
+                + ",admissionQueued=" + admission.getQueued() + ",admissionRejected=" + admission.getRejected()
+                + ",inFlight=" + admission.getInFlight() + ",waiting=" + admission.getWaiting();
+    }
+
+    RateLimiter<ClientHandler> getRequestLimiter() {
+        return requestLimiter;
+    }
+
+    private void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("❌ Error closing channel: " + e.getMessage());
+        }
+    }
+
+    long getSearchDebounceMillis() {
+        return searchDebounceMillis;
+    }
+
+    void scheduleSearch(Runnable task, long delayNanos) {
+        searchTimer.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Runs a tagged read request off the connection's ordered request path. */
+    void executeRead(Runnable task) {
+        Semaphore permits = requestPermits;
+        readExecutor.execute(permits == null ? task : () -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /** Non-null only in virtual-thread mode. */
+    Semaphore getRequestPermits() {
+        return requestPermits;
+    }
+
+    public void broadcastUpdate(String message) {
+        broadcastEncoded(message, BinaryProtocol.encodeMessage(message));
+    }
+
+    /**
+     * Runs {@code action} with the current catalog version while no trip event can be published, so a snapshot
+     * read and sent inside it is never followed by an event it already contains at a lower version.
+     */
+    void withCatalogVersion(LongConsumer action) {
+        catalogLock.lock();
+        try {
+            action.accept(catalogVersion);
+        } finally {
+            catalogLock.unlock();
         }
     }
 
+    /** Publishes an added or changed trip to every client; call after the change is committed. */
+    public void publishTripChange(String kind, Trip trip) {
+        publishTripChange(kind, () -> trip);
+    }
+
+    /** As above, reading the trip only once its event has a version, so the latest version carries the latest state. */
+    public void publishTripChange(String kind, Supplier<Trip> current) {
+        byte opcode = TripCatalog.TRIP_ADDED.equals(kind) ? BinaryProtocol.OP_TRIP_ADDED : BinaryProtocol.OP_TRIP_CHANGED;
+        catalogLock.lock();
+        try {
+            long version = ++catalogVersion;
+            Trip trip = current.get();
+            publishEvent(version, kind + "#" + version + "#" + TextProtocol.formatTrip(trip), BinaryProtocol.encodeTripEvent(opcode, version, trip));
+        } finally {
+            catalogLock.unlock();
+        }
+    }
+
+    /** The seat count is read when the event is numbered, so concurrent bookings cannot publish it out of order. */
+    void publishSeats(int tripId) {
+        try {
+            Trip trip = services.getTripService().findById(tripId);
+            if (trip != null) {
+                publishTripChange(TripCatalog.TRIP_CHANGED, () -> {
+                    trip.setAvailableSeats(services.getTripService().availableSeats(tripId));
+                    return trip;
+                });
+            }
+        } catch (RuntimeException e) {
+            // The booking or hold itself went through; replicas pick up the count with the trip's next event.
+            System.err.println("⚠️ Could not publish seats of trip " + tripId + ": " + e.getMessage());
+        }
+    }
+
+    public void publishTripRemoved(int tripId) {
+        catalogLock.lock();
+        try {
+            long version = ++catalogVersion;
+            publishEvent(version, TripCatalog.TRIP_REMOVED + "#" + version + "#" + tripId, BinaryProtocol.encodeTripRemoved(version, tripId));
+        } finally {
+            catalogLock.unlock();
+        }
+    }
+
+    /** Called under catalogLock, so events enter the log and the broadcaster in version order. */
+    private void publishEvent(long version, String line, ByteBuffer frame) {
+        ByteBuffer lineBytes = encodeLine(line);
+        eventLog.append(version, lineBytes, frame);
+        broadcastEncoded(line, lineBytes, frame);
+    }
+
+    /**
+     * Events after {@code lastVersion}, or null when the log no longer holds them all. Call inside
+     * {@link #withCatalogVersion} so nothing is published between the replay and what follows it.
+     */
+    List<TripEventLog.Entry> eventsSince(long lastVersion) {
+        catalogLock.lock();
+        try {
+            return eventLog.since(lastVersion, catalogVersion);
+        } finally {
+            catalogLock.unlock();
+        }
+    }
+
+    String openSession() {
+        String token = UUID.randomUUID().toString();
+        sessions.put(token, Boolean.TRUE);
+        return token;
+    }
+
+    boolean isSession(String token) {
+        return sessions.get(token) != null;
+    }
+
+    private static ByteBuffer encodeLine(String line) {
+        return ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encodes once per protocol instead of once per client and hands the fan-out to the broadcaster thread.
+     * The text line doubles as the coalesce key, so identical queued notifications can be merged.
+     */
+    private void broadcastEncoded(String line, ByteBuffer frame) {
+        broadcastEncoded(line, encodeLine(line), frame);
+    }
+
+    private void broadcastEncoded(String line, ByteBuffer lineBytes, ByteBuffer frame) {
+        broadcaster.execute(() -> {
+            for (ClientHandler client : clients) {
+                client.sendEncoded(lineBytes, frame, line);
+            }
+        });
+    }
+
     public void removeClient(ClientHandler handler) {
         clients.remove(handler);
+        requestLimiter.forget(handler);
     }
 
     public static void main(String[] args) {
         new Server().start();
     }
-}
\ No newline at end of file
+}
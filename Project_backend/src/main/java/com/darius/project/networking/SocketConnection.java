@@ -0,0 +1,97 @@
+package com.darius.project.networking;
+import org.slf4j.*;
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Blocking {@link Connection} over a plain {@link Socket}; used when the server runs one thread per client.
+ * Reads bytes rather than characters so the stream can switch from text lines to binary frames mid-connection.
+ * Writes happen on a virtual writer thread fed by an {@link OutboundQueue}, so a client that stops reading
+ * cannot block whoever is sending to it.
+ */
+public class SocketConnection implements Connection {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SocketConnection.class);
+    private final Socket socket;
+    private final DataInputStream in;
+    private final LineReader lineReader;
+    private final OutputStream out;
+    private final int maxRequestBytes;
+    private final OutboundQueue outbound;
+
+    public SocketConnection(Socket socket, int maxRequestBytes, OutboundQueue outbound) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.lineReader = new LineReader(in, maxRequestBytes);
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.maxRequestBytes = maxRequestBytes;
+        this.outbound = outbound;
+    }
+
+    /** Starts the writer thread; until then sends are only queued. */
+    public void start() {
+        Thread.ofVirtual().name("writer-" + socket.getPort()).start(this::writeLoop);
+    }
+
+    public String readLine() throws IOException {
+        return lineReader.readLine();
+    }
+
+    public BinaryProtocol.Frame readFrame() throws IOException {
+        return BinaryProtocol.readFrame(in, maxRequestBytes);
+    }
+
+    @Override
+    public void send(ByteBuffer data, String coalesceKey) {
+        if (!outbound.offer(data, coalesceKey)) {
+            LOGGER.warn("Outbound queue of {} is full, disconnecting slow client", getRemoteAddress());
+            close();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            ByteBuffer data;
+            while ((data = outbound.take()) != null) {
+                ByteBuffer view = data.duplicate();
+                if (view.hasArray()) {
+                    out.write(view.array(), view.arrayOffset() + view.position(), view.remaining());
+                } else {
+                    byte[] bytes = new byte[view.remaining()];
+                    view.get(bytes);
+                    out.write(bytes);
+                }
+                // Anything queued meanwhile goes out in the same flush.
+                if (outbound.size() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Write to {} failed: {}", getRemoteAddress(), e.getMessage());
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public int getQueuedMessages() {
+        return outbound.size();
+    }
+
+    @Override
+    public void close() {
+        outbound.close();
+        try {
+            // Also unblocks the reading thread, which then removes the client from the server.
+            socket.close();
+        } catch (IOException e) {
+            LOGGER.error("Error closing socket {}: {}", getRemoteAddress(), e.getMessage());
+        }
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+}
@@ -0,0 +1,45 @@
+package com.darius.project.networking;
+import com.darius.project.domain.*;
+import java.util.*;
+
+/**
+ * Row formats of the '#'-delimited text protocol: fields separated by ',', rows terminated by ';'.
+ */
+public final class TextProtocol {
+
+    private TextProtocol() {}
+
+    public static String formatTrip(Trip trip) { return trip.getId() + "," + trip.getAttractionName() + "," + trip.getTransportCompany() + "," + trip.getDepartureTime() + "," + trip.getPrice() + "," + trip.getAvailableSeats(); }
+
+    public static String formatUser(User user) { return user.getId() + "," + user.getUsername() + "," + user.getPassword(); }
+
+    public static String formatTrips(List<Trip> trips) {
+        StringBuilder sb = new StringBuilder(trips.size() * 96);
+        trips.forEach(trip -> sb.append(formatTrip(trip)).append(";"));
+        return sb.toString();
+    }
+
+    public static Trip parseTrip(String row) {
+        String[] fields = row.split(",");
+        if (fields.length < 6) {
+            throw new IllegalArgumentException("Malformed trip row: " + row);
+        }
+        return new Trip(Integer.parseInt(fields[0]), fields[1], fields[2], fields[3], Double.parseDouble(fields[4]), Integer.parseInt(fields[5]));
+    }
+
+    public static List<Trip> parseTrips(String rows) {
+        List<Trip> trips = new ArrayList<>();
+        for (String row : rows.split(";")) {
+            if (!row.isEmpty()) {
+                trips.add(parseTrip(row));
+            }
+        }
+        return trips;
+    }
+
+    public static String formatUsers(List<User> users) {
+        StringBuilder sb = new StringBuilder(users.size() * 32);
+        users.forEach(user -> sb.append(formatUser(user)).append(";"));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package com.darius.project.networking;
+import com.darius.project.domain.Trip;
+import java.util.*;
+
+/**
+ * Client-side copy of the trip catalog. It is loaded from a {@code CATALOG} snapshot and kept current by the
+ * server's versioned {@code TRIP_ADDED} / {@code TRIP_CHANGED} / {@code TRIP_REMOVED} events.
+ * <p>
+ * Every published change increments the server's catalog version by one, so an event that skips a version
+ * means one was missed and the copy must be reloaded. Events at or below the current version are already
+ * contained in the snapshot. Not thread-safe; {@link Client} only touches it from its listener thread.
+ */
+public class TripCatalog {
+    public static final String CATALOG = "CATALOG";
+    public static final String TRIP_ADDED = "TRIP_ADDED";
+    public static final String TRIP_CHANGED = "TRIP_CHANGED";
+    public static final String TRIP_REMOVED = "TRIP_REMOVED";
+
+    public enum Result { APPLIED, IGNORED, GAP }
+
+    private final Map<Integer, Trip> trips = new LinkedHashMap<>();
+    private long version = -1;
+
+    public void reset(long version, List<Trip> snapshot) {
+        trips.clear();
+        snapshot.forEach(trip -> trips.put(trip.getId(), trip));
+        this.version = version;
+    }
+
+    /**
+     * Applies one event. {@code trip} is null for {@link #TRIP_REMOVED}.
+     * On {@link Result#GAP} the copy is dropped and further events are ignored until the next {@link #reset}.
+     */
+    public Result apply(String kind, long eventVersion, int tripId, Trip trip) {
+        if (version < 0 || eventVersion <= version) {
+            return Result.IGNORED;
+        }
+        if (eventVersion != version + 1) {
+            version = -1;
+            return Result.GAP;
+        }
+        // Events are upserts/removes rather than strict inserts: a snapshot may already contain
+        // a change whose event was published after the snapshot's version was read.
+        if (TRIP_REMOVED.equals(kind)) {
+            trips.remove(tripId);
+        } else {
+            trips.put(trip.getId(), trip);
+        }
+        version = eventVersion;
+        return Result.APPLIED;
+    }
+
+    public boolean isLoaded() { return version >= 0; }
+
+    public long getVersion() { return version; }
+
+    public List<Trip> getTrips() { return new ArrayList<>(trips.values()); }
+}
@@ -0,0 +1,65 @@
+package com.darius.project.networking;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * The most recent trip catalog events, kept in both encodings so a resuming client can be sent exactly what it
+ * missed. Holds at most {@code capacity} events; older ones fall off and a client behind them must reload the
+ * catalog. Not thread-safe; {@link Server} only touches it under its catalog lock.
+ */
+final class TripEventLog {
+    static final class Entry {
+        final long version;
+        final ByteBuffer line;
+        final ByteBuffer frame;
+
+        private Entry(long version, ByteBuffer line, ByteBuffer frame) {
+            this.version = version;
+            this.line = line;
+            this.frame = frame;
+        }
+    }
+
+    private final Entry[] ring;
+    private int next = 0;
+    private int size = 0;
+
+    TripEventLog(int capacity) {
+        this.ring = new Entry[Math.max(1, capacity)];
+    }
+
+    /** Versions must be appended in increasing order without gaps. */
+    void append(long version, ByteBuffer line, ByteBuffer frame) {
+        ring[next] = new Entry(version, line, frame);
+        next = (next + 1) % ring.length;
+        size = Math.min(size + 1, ring.length);
+    }
+
+    /**
+     * Events after {@code lastVersion} up to {@code currentVersion}, oldest first, or null when some of them are no
+     * longer held (or {@code lastVersion} is not a version this log has reached).
+     */
+    List<Entry> since(long lastVersion, long currentVersion) {
+        if (lastVersion < 0 || lastVersion > currentVersion) {
+            return null;
+        }
+        if (lastVersion == currentVersion) {
+            return List.of();
+        }
+        if (size == 0 || oldest().version > lastVersion + 1) {
+            return null;
+        }
+        List<Entry> missed = new ArrayList<>((int) (currentVersion - lastVersion));
+        for (int i = 0; i < size; i++) {
+            Entry entry = ring[(next - size + i + ring.length) % ring.length];
+            if (entry.version > lastVersion) {
+                missed.add(entry);
+            }
+        }
+        return missed;
+    }
+
+    private Entry oldest() {
+        return ring[(next - size + ring.length) % ring.length];
+    }
+}
@@ -0,0 +1,193 @@
+package com.darius.project.repository.Database;
+
+import com.darius.project.domain.*;
+import com.darius.project.repository.GenericRepos.BookingRepository;
+import org.slf4j.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+public class BookingDB implements BookingRepository {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingDB.class);
+    private final GroupCommitWriter writer;
+    private final ReservationJournal journal;
+
+    public BookingDB(GroupCommitWriter writer, ReservationJournal journal) {
+        this.writer = writer;
+        this.journal = journal;
+        writer.submit(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS seat_holds (id VARCHAR(64) PRIMARY KEY, tripId INT NOT NULL, "
+                        + "tickets INT NOT NULL, expiresAt INTEGER NOT NULL)");
+            }
+            return null;
+        }).join();
+        LOGGER.info("BookingDB initialized");
+    }
+
+    @Override
+    public CompletableFuture<Void> saveBooking(Customer newCustomer, Reservation reservation) {
+        LOGGER.info("Queueing booking with reservation ID: {}, trip ID: {}, tickets: {}",
+                reservation.getId(), reservation.getTrip(), reservation.getNumberOfTickets());
+
+        return saveBookings(newCustomer == null ? List.of() : List.of(newCustomer), List.of(reservation));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveBookings(List<Customer> newCustomers, List<Reservation> reservations) {
+        int tripId = reservations.get(0).getTrip();
+        int tickets = reservations.stream().mapToInt(Reservation::getNumberOfTickets).sum();
+        if (reservations.size() > 1) {
+            LOGGER.info("Queueing {} bookings on trip ID: {}, tickets: {}", reservations.size(), tripId, tickets);
+        }
+
+        return writer.submit(connection -> {
+            int seatsAfter = adjustSeats(connection, tripId, -tickets);
+            if (seatsAfter < 0) {
+                throw new IllegalStateException("Not enough seats available");
+            }
+            ReservationJournal.Event[] events = Arrays.copyOf(insertBookings(connection, newCustomers, reservations), reservations.size() + 1);
+            events[reservations.size()] = ReservationJournal.Event.seatsAdjusted(tripId, -tickets, seatsAfter);
+            journal.append(events);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteBooking(Reservation reservation) {
+        LOGGER.info("Queueing cancellation of reservation with ID: {}", reservation.getId());
+
+        return writer.submit(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM reservations WHERE id = ?")) {
+                statement.setInt(1, reservation.getId());
+                if (statement.executeUpdate() == 0) {
+                    return false;
+                }
+            }
+            int seatsAfter = adjustSeats(connection, reservation.getTrip(), reservation.getNumberOfTickets());
+            journal.append(
+                    ReservationJournal.Event.cancelled(reservation.getTrip(), reservation.getId(), reservation.getCustomer(), reservation.getNumberOfTickets()),
+                    ReservationJournal.Event.seatsAdjusted(reservation.getTrip(), reservation.getNumberOfTickets(), seatsAfter));
+            return true;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> saveHold(String holdId, int tripId, int tickets, long expiresAtMillis) {
+        LOGGER.info("Queueing hold with ID: {}, trip ID: {}, tickets: {}", holdId, tripId, tickets);
+
+        return writer.submit(connection -> {
+            int seatsAfter = adjustSeats(connection, tripId, -tickets);
+            if (seatsAfter < 0) {
+                throw new IllegalStateException("Not enough seats available");
+            }
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO seat_holds VALUES(?,?,?,?)")) {
+                statement.setString(1, holdId);
+                statement.setInt(2, tripId);
+                statement.setInt(3, tickets);
+                statement.setLong(4, expiresAtMillis);
+                statement.executeUpdate();
+            }
+            journal.append(ReservationJournal.Event.seatsAdjusted(tripId, -tickets, seatsAfter));
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteHold(String holdId) {
+        LOGGER.info("Queueing release of hold with ID: {}", holdId);
+
+        return writer.submit(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM seat_holds WHERE id = ? RETURNING tripId, tickets")) {
+                statement.setString(1, holdId);
+                ResultSet resultSet = statement.executeQuery();
+                if (!resultSet.next()) {
+                    return false;
+                }
+                returnHeldSeats(connection, resultSet.getInt(1), resultSet.getInt(2));
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> confirmHold(String holdId, Customer newCustomer, Reservation reservation) {
+        LOGGER.info("Queueing confirmation of hold with ID: {} as reservation ID: {}", holdId, reservation.getId());
+
+        return writer.submit(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM seat_holds WHERE id = ?")) {
+                statement.setString(1, holdId);
+                if (statement.executeUpdate() == 0) {
+                    throw new IllegalArgumentException("Hold not found or expired");
+                }
+            }
+            journal.append(insertBookings(connection, newCustomer == null ? List.of() : List.of(newCustomer), List.of(reservation)));
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<Integer, Integer>> deleteExpiredHolds(long nowMillis) {
+        return writer.submit(connection -> {
+            Map<Integer, Integer> released = new HashMap<>();
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM seat_holds WHERE expiresAt < ? RETURNING tripId, tickets")) {
+                statement.setLong(1, nowMillis);
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    released.merge(resultSet.getInt(1), resultSet.getInt(2), Integer::sum);
+                }
+            }
+            for (Map.Entry<Integer, Integer> entry : released.entrySet()) {
+                returnHeldSeats(connection, entry.getKey(), entry.getValue());
+            }
+            if (!released.isEmpty()) {
+                LOGGER.info("Released expired holds on {} trips", released.size());
+            }
+            return released;
+        });
+    }
+
+    private void returnHeldSeats(Connection connection, int tripId, int tickets) throws SQLException {
+        int seatsAfter = adjustSeats(connection, tripId, tickets);
+        if (seatsAfter >= 0) {
+            journal.append(ReservationJournal.Event.seatsAdjusted(tripId, tickets, seatsAfter));
+        }
+    }
+
+    /** Inserts the customers and reservations, without touching seats; returns each reservation's journal event. */
+    private static ReservationJournal.Event[] insertBookings(Connection connection, List<Customer> newCustomers, List<Reservation> reservations) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO customers VALUES(?,?,?,?)")) {
+            for (Customer customer : newCustomers) {
+                statement.setInt(1, customer.getId());
+                statement.setString(2, customer.getCustomerName());
+                statement.setString(3, customer.getCustomerEmail());
+                statement.setString(4, customer.getCustomerPhone());
+                statement.executeUpdate();
+            }
+        }
+        ReservationJournal.Event[] events = new ReservationJournal.Event[reservations.size()];
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO reservations VALUES(?,?,?,?)")) {
+            for (int i = 0; i < reservations.size(); i++) {
+                Reservation reservation = reservations.get(i);
+                statement.setInt(1, reservation.getId());
+                statement.setInt(2, reservation.getTrip());
+                statement.setInt(3, reservation.getCustomer());
+                statement.setInt(4, reservation.getNumberOfTickets());
+                statement.executeUpdate();
+                events[i] = ReservationJournal.Event.created(reservation.getTrip(), reservation.getId(), reservation.getCustomer(), reservation.getNumberOfTickets());
+            }
+        }
+        return events;
+    }
+
+    /** The trip's available seats after the change, or -1 when it would go negative (nothing is changed then). */
+    private static int adjustSeats(Connection connection, int tripId, int delta) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE trips SET availableSeats = availableSeats + ? WHERE id = ? AND availableSeats + ? >= 0 RETURNING availableSeats")) {
+            statement.setInt(1, delta);
+            statement.setInt(2, tripId);
+            statement.setInt(3, delta);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getInt(1) : -1;
+        }
+    }
+}
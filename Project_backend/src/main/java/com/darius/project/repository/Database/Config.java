@@ -18,4 +18,22 @@ public class Config {
     public static String getProperty(String key) {
         return props.getProperty(key);
     }
-}
\ No newline at end of file
+
+    public static String getProperty(String key, String defaultValue) {
+        String value = props.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static int getIntProperty(String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid integer for property {}: '{}', using default {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+}
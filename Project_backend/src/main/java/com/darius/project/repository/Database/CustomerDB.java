@@ -6,7 +6,7 @@ import org.slf4j.*;
 import java.sql.*;
 import java.util.*;
 
-public class CustomerDB extends RepoDB<Integer, Customer> implements CustomerRepository {
+public final class CustomerDB extends RepoDB<Integer, Customer> implements CustomerRepository {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CustomerDB.class);
     public CustomerDB() {
@@ -41,6 +41,37 @@ public class CustomerDB extends RepoDB<Integer, Customer> implements CustomerRep
         return customer;
     }
 
+    @Override
+    public List<Customer> findAllById(Collection<Integer> ids) {
+        LOGGER.info("Finding {} customers by ID", ids.size());
+
+        List<Customer> customers = new ArrayList<>();
+        List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        try {
+            for (int from = 0; from < distinct.size(); from += MAX_IDS_PER_QUERY) {
+                List<Integer> chunk = distinct.subList(from, Math.min(from + MAX_IDS_PER_QUERY, distinct.size()));
+                try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM customers WHERE id IN (" + placeholders(chunk.size()) + ")")) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setInt(i + 1, chunk.get(i));
+                    }
+                    ResultSet resultSet = statement.executeQuery();
+                    while (resultSet.next()) {
+                        customers.add(new Customer(
+                                resultSet.getInt("id"),
+                                resultSet.getString("customerName"),
+                                resultSet.getString("customerEmail"),
+                                resultSet.getString("customerPhone")
+                        ));
+                    }
+                }
+            }
+            LOGGER.info("Found {} of {} customers", customers.size(), distinct.size());
+        } catch (Exception e) {
+            LOGGER.error("Error finding customers by ID, error: {}", e.getMessage(), e);
+        }
+        return customers;
+    }
+
     @Override
     public Customer findById(Integer id) {
         LOGGER.info("Finding customer by ID: {}", id);
@@ -154,29 +185,17 @@ public class CustomerDB extends RepoDB<Integer, Customer> implements CustomerRep
         LOGGER.info("Updating customer with ID: {}, name: {}", id, customer.getCustomerName());
 
         super.update(id, customer);
-        try {
-            connection.setAutoCommit(false);
-            try (PreparedStatement statement = connection.prepareStatement("UPDATE customers SET customerName = ?, customerEmail = ?, customerPhone = ? WHERE id = ?")) {
-                statement.setString(1, customer.getCustomerName());
-                statement.setString(2, customer.getCustomerEmail());
-                statement.setString(3, customer.getCustomerPhone());
-                statement.setInt(4, id);
-                int rowsAffected = statement.executeUpdate();
-
-                connection.commit();
-                connection.setAutoCommit(true);
-                LOGGER.info("Successfully updated customer with ID: {}, rows affected: {}", id, rowsAffected);
-            }
+        // A single statement commits atomically on its own; toggling autocommit here would leak the
+        // transaction to every other thread using this shared connection.
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE customers SET customerName = ?, customerEmail = ?, customerPhone = ? WHERE id = ?")) {
+            statement.setString(1, customer.getCustomerName());
+            statement.setString(2, customer.getCustomerEmail());
+            statement.setString(3, customer.getCustomerPhone());
+            statement.setInt(4, id);
+            int rowsAffected = statement.executeUpdate();
+            LOGGER.info("Successfully updated customer with ID: {}, rows affected: {}", id, rowsAffected);
         } catch (Exception e) {
             LOGGER.error("Error updating customer {}, error: {}", customer, e.getMessage(), e);
-            try {
-                LOGGER.info("Attempting to rollback transaction");
-                connection.rollback();
-                connection.setAutoCommit(true);
-                LOGGER.info("Transaction rollback successful");
-            } catch (Exception rollbackException) {
-                LOGGER.error("Error during transaction rollback: {}", rollbackException.getMessage(), rollbackException);
-            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.darius.project.repository.Database;
+
+import org.slf4j.*;
+import org.sqlite.*;
+import java.sql.*;
+
+/**
+ * Reads a counter that triggers in the database move on every insert, update or delete of a trip, reservation or
+ * user, by any connection in any process, as part of the writing transaction. Writes to other tables (journal
+ * checkpoints, idempotency keys, ID blocks, seat holds) leave it alone, so polling it notices only writes that change
+ * what the services serve. The table and the triggers are created here if missing.
+ */
+public class DataVersionDB {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataVersionDB.class);
+    private static final String[] WATCHED_TABLES = {"trips", "reservations", "users"};
+    private Connection connection = null;
+
+    /** Call once the watched tables exist; a trigger cannot be created on a missing table. */
+    public DataVersionDB() {
+        try {
+            SQLiteDataSource dataSource = new SQLiteDataSource();
+            dataSource.setUrl(Config.getProperty("db.url"));
+            dataSource.setBusyTimeout(Config.getIntProperty("db.busy.timeout.ms", 5000));
+            connection = dataSource.getConnection();
+            createCounter();
+            LOGGER.info("DataVersionDB initialized, connection opened");
+        } catch (SQLException e) {
+            LOGGER.error("Error opening data version connection, error: {}", e.getMessage(), e);
+        }
+    }
+
+    private void createCounter() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS data_version (id INTEGER PRIMARY KEY, version INTEGER NOT NULL)");
+            statement.executeUpdate("INSERT OR IGNORE INTO data_version VALUES (1, 0)");
+            for (String table : WATCHED_TABLES) {
+                for (String event : new String[] {"INSERT", "UPDATE", "DELETE"}) {
+                    statement.executeUpdate("CREATE TRIGGER IF NOT EXISTS data_version_" + table + "_" + event.toLowerCase()
+                            + " AFTER " + event + " ON " + table + " BEGIN UPDATE data_version SET version = version + 1 WHERE id = 1; END");
+                }
+            }
+        }
+    }
+
+    /** The current data version, or -1 when it cannot be read. */
+    public synchronized long dataVersion() {
+        if (connection == null) {
+            return -1;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT version FROM data_version WHERE id = 1")) {
+            return resultSet.next() ? resultSet.getLong(1) : -1;
+        } catch (SQLException e) {
+            LOGGER.error("Error reading data version, error: {}", e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    public void closeConnection() {
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Error closing data version connection.", e);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.darius.project.repository.Database;
+
+import org.slf4j.*;
+import org.sqlite.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Applies writes from many threads on one connection, committing them in groups: the writer thread takes whatever
+ * has queued up within a short window (or up to a batch size) and runs it as a single transaction, so a burst of
+ * bookings pays one commit (one fsync) instead of one each. Each write runs inside its own savepoint, so a write
+ * that fails is rolled back alone and the rest of its group still commits. A write's future completes only after
+ * its group has committed.
+ */
+public class GroupCommitWriter implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    /** One unit of work; everything it does commits or rolls back together. */
+    public interface Write<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    /** Keeps state outside the database in step with each group's transaction; called on the writer thread. */
+    public interface CommitHook {
+        /** A write of the group is about to run. */
+        void beforeWrite();
+        /** The write that last began failed and was rolled back to its savepoint; the rest of the group goes on. */
+        void afterWriteRollback();
+        /** Last chance to write as part of the group's transaction. */
+        void beforeCommit(Connection connection) throws SQLException;
+        void afterCommit();
+        void afterRollback();
+    }
+
+    private static final class Pending<T> {
+        private final Write<T> write;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private T value;
+        private Exception failure;
+
+        private Pending(Write<T> write) {
+            this.write = write;
+        }
+
+        private void run(Connection connection) {
+            try {
+                value = write.apply(connection);
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+
+        private void complete() {
+            if (failure == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private final BlockingQueue<Pending<?>> queue = new LinkedBlockingQueue<>();
+    private final long windowNanos;
+    private final int maxBatch;
+    private final CommitHook hook;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private Connection connection = null;
+
+    public GroupCommitWriter() {
+        this(null);
+    }
+
+    public GroupCommitWriter(CommitHook hook) {
+        this.hook = hook;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Config.getIntProperty("db.group.commit.window.ms", 2));
+        this.maxBatch = Math.max(1, Config.getIntProperty("db.group.commit.max.batch", 64));
+        try {
+            SQLiteDataSource dataSource = new SQLiteDataSource();
+            dataSource.setUrl(Config.getProperty("db.url"));
+            // Deferred (the default): the driver reopens a transaction right after each commit, and an idle
+            // IMMEDIATE one would hold the write lock against every other connection.
+            dataSource.setBusyTimeout(Config.getIntProperty("db.busy.timeout.ms", 5000));
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            LOGGER.info("GroupCommitWriter initialized, connection opened");
+        } catch (SQLException e) {
+            LOGGER.error("Error opening group commit connection, error: {}", e.getMessage(), e);
+        }
+        writerThread = new Thread(this::runWriter, "group-commit");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public <T> CompletableFuture<T> submit(Write<T> write) {
+        Pending<T> pending = new Pending<>(write);
+        if (!running || !writerThread.isAlive()) {
+            pending.result.completeExceptionally(new IllegalStateException("Writer is closed"));
+            return pending.result;
+        }
+        queue.add(pending);
+        // Closed meanwhile: fail the write unless the writer has already taken it, rather than leave it queued forever.
+        if (!running && queue.remove(pending)) {
+            pending.result.completeExceptionally(new IllegalStateException("Writer is closed"));
+        }
+        return pending.result;
+    }
+
+    private void runWriter() {
+        List<Pending<?>> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    Pending<?> next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pending -> pending.result.completeExceptionally(new IllegalStateException("Writer is closed")));
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        // Interrupted, or closed while a write was being queued: fail what is left instead of leaving it waiting.
+        Pending<?> left;
+        while ((left = queue.poll()) != null) {
+            left.result.completeExceptionally(new IllegalStateException("Writer is closed"));
+        }
+    }
+
+    private void commit(List<Pending<?>> batch) {
+        try {
+            if (connection == null) {
+                throw new SQLException("No database connection");
+            }
+            for (Pending<?> pending : batch) {
+                Savepoint savepoint = connection.setSavepoint();
+                if (hook != null) {
+                    hook.beforeWrite();
+                }
+                pending.run(connection);
+                if (pending.failure == null) {
+                    connection.releaseSavepoint(savepoint);
+                } else {
+                    connection.rollback(savepoint);
+                    connection.releaseSavepoint(savepoint);
+                    if (hook != null) {
+                        hook.afterWriteRollback();
+                    }
+                }
+            }
+            if (hook != null) {
+                hook.beforeCommit(connection);
+            }
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            // Also a failing hook or a bug: the writer thread must survive it, or every later write would hang.
+            LOGGER.error("Error committing group of {} writes, error: {}", batch.size(), e.getMessage(), e);
+            rollback();
+            batch.forEach(pending -> pending.result.completeExceptionally(e));
+            return;
+        }
+        if (hook != null) {
+            try {
+                hook.afterCommit();
+            } catch (RuntimeException e) {
+                // The group is stored; its writes still succeed.
+                LOGGER.error("Error after committing group, error: {}", e.getMessage(), e);
+            }
+        }
+        LOGGER.debug("Committed group of {} writes", batch.size());
+        batch.forEach(Pending::complete);
+    }
+
+    private void rollback() {
+        if (connection != null) {
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                LOGGER.error("Error rolling back group, error: {}", e.getMessage(), e);
+            }
+        }
+        if (hook != null) {
+            try {
+                hook.afterRollback();
+            } catch (RuntimeException e) {
+                LOGGER.error("Error after rolling back group, error: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /** Stops accepting writes, commits what is already queued and closes the connection. */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Error closing group commit connection.", e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.darius.project.repository.Database;
+
+import org.slf4j.*;
+import org.sqlite.*;
+import java.sql.*;
+
+/**
+ * Persistent id sequences, one row per entity in {@code id_sequences}. Ids are handed out in blocks: reserving a block
+ * is one short IMMEDIATE transaction, so the socket server and the REST API can draw from the same sequence without
+ * ever receiving overlapping ranges.
+ */
+public class IdSequenceDB {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdSequenceDB.class);
+    private Connection connection = null;
+
+    public IdSequenceDB() {
+        try {
+            SQLiteDataSource dataSource = new SQLiteDataSource();
+            dataSource.setUrl(Config.getProperty("db.url"));
+            // Take the write lock when the transaction starts, and wait for the other process instead of failing.
+            dataSource.setTransactionMode("IMMEDIATE");
+            dataSource.setBusyTimeout(Config.getIntProperty("db.busy.timeout.ms", 5000));
+            connection = dataSource.getConnection();
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS id_sequences (name VARCHAR(64) PRIMARY KEY, next_value INTEGER NOT NULL)");
+            }
+            LOGGER.info("IdSequenceDB initialized, connection opened");
+        } catch (SQLException e) {
+            LOGGER.error("Error opening id sequence connection, error: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reserves {@code blockSize} ids of the sequence and returns the first. A sequence seen for the first time starts
+     * after the largest id already in {@code table}.
+     */
+    public synchronized int allocateBlock(String sequence, String table, int blockSize) throws SQLException {
+        LOGGER.info("Allocating {} ids from sequence: {}", blockSize, sequence);
+
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT OR IGNORE INTO id_sequences (name, next_value) SELECT ?, COALESCE(MAX(id), 0) + 1 FROM " + table)) {
+                statement.setString(1, sequence);
+                statement.executeUpdate();
+            }
+            int first;
+            try (PreparedStatement statement = connection.prepareStatement("SELECT next_value FROM id_sequences WHERE name = ?")) {
+                statement.setString(1, sequence);
+                ResultSet resultSet = statement.executeQuery();
+                resultSet.next();
+                first = resultSet.getInt(1);
+            }
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE id_sequences SET next_value = next_value + ? WHERE name = ?")) {
+                statement.setInt(1, blockSize);
+                statement.setString(2, sequence);
+                statement.executeUpdate();
+            }
+            connection.commit();
+            LOGGER.info("Allocated ids {} to {} from sequence: {}", first, first + blockSize - 1, sequence);
+            return first;
+        } catch (SQLException e) {
+            LOGGER.error("Error allocating ids from sequence: {}, error: {}", sequence, e.getMessage(), e);
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    public void closeConnection() {
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Error closing id sequence connection.", e);
+        }
+    }
+}
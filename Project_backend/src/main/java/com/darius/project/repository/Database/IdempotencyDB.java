@@ -0,0 +1,103 @@
+package com.darius.project.repository.Database;
+
+import org.slf4j.*;
+import org.sqlite.*;
+import java.sql.*;
+
+/**
+ * Responses already given for idempotency keys, so a retried request is answered the same way after a restart.
+ * One row per scope and key in {@code idempotency_keys}; rows older than the store's TTL are deleted from time to time.
+ */
+public class IdempotencyDB {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotencyDB.class);
+    private Connection connection = null;
+
+    /** A stored response: the HTTP status, the JSON body, and a fingerprint of the request that produced it. */
+    public static final class StoredResponse {
+        private final int status;
+        private final String body;
+        private final String fingerprint;
+        private final long createdAtMillis;
+
+        public StoredResponse(int status, String body, String fingerprint, long createdAtMillis) {
+            this.status = status;
+            this.body = body;
+            this.fingerprint = fingerprint;
+            this.createdAtMillis = createdAtMillis;
+        }
+
+        public int getStatus() { return status; }
+        public String getBody() { return body; }
+        public String getFingerprint() { return fingerprint; }
+        public long getCreatedAtMillis() { return createdAtMillis; }
+    }
+
+    public IdempotencyDB() {
+        try {
+            SQLiteDataSource dataSource = new SQLiteDataSource();
+            dataSource.setUrl(Config.getProperty("db.url"));
+            dataSource.setBusyTimeout(Config.getIntProperty("db.busy.timeout.ms", 5000));
+            connection = dataSource.getConnection();
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS idempotency_keys (scope VARCHAR(64) NOT NULL, idempotency_key VARCHAR(255) NOT NULL, "
+                        + "status INTEGER NOT NULL, body TEXT NOT NULL, fingerprint VARCHAR(64) NOT NULL, created_at INTEGER NOT NULL, "
+                        + "PRIMARY KEY (scope, idempotency_key))");
+            }
+            LOGGER.info("IdempotencyDB initialized, connection opened");
+        } catch (SQLException e) {
+            LOGGER.error("Error opening idempotency connection, error: {}", e.getMessage(), e);
+        }
+    }
+
+    /** The response stored for the key, unless it is missing or older than {@code notBeforeMillis}. */
+    public synchronized StoredResponse find(String scope, String key, long notBeforeMillis) {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT status, body, fingerprint, created_at FROM idempotency_keys WHERE scope = ? AND idempotency_key = ? AND created_at >= ?")) {
+            statement.setString(1, scope);
+            statement.setString(2, key);
+            statement.setLong(3, notBeforeMillis);
+            ResultSet resultSet = statement.executeQuery();
+            if (resultSet.next()) {
+                return new StoredResponse(resultSet.getInt("status"), resultSet.getString("body"),
+                        resultSet.getString("fingerprint"), resultSet.getLong("created_at"));
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Error finding idempotency key: {}, error: {}", key, e.getMessage(), e);
+        }
+        return null;
+    }
+
+    public synchronized void save(String scope, String key, StoredResponse response) {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT OR REPLACE INTO idempotency_keys VALUES(?,?,?,?,?,?)")) {
+            statement.setString(1, scope);
+            statement.setString(2, key);
+            statement.setInt(3, response.getStatus());
+            statement.setString(4, response.getBody());
+            statement.setString(5, response.getFingerprint());
+            statement.setLong(6, response.getCreatedAtMillis());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            LOGGER.error("Error saving idempotency key: {}, error: {}", key, e.getMessage(), e);
+        }
+    }
+
+    public synchronized void deleteOlderThan(long millis) {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM idempotency_keys WHERE created_at < ?")) {
+            statement.setLong(1, millis);
+            int rowsAffected = statement.executeUpdate();
+            LOGGER.info("Deleted {} expired idempotency keys", rowsAffected);
+        } catch (SQLException e) {
+            LOGGER.error("Error deleting expired idempotency keys, error: {}", e.getMessage(), e);
+        }
+    }
+
+    public void closeConnection() {
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Error closing idempotency connection.", e);
+        }
+    }
+}
@@ -11,6 +11,13 @@ public class RepoDB<ID, T extends Identifiable<ID>> extends MemoryRepository<ID,
 
     protected Connection connection = null;
     private static final Logger LOGGER = LoggerFactory.getLogger(RepoDB.class);
+    // Ids bound to one IN (...) query; larger id sets are looked up in chunks of this size.
+    protected static final int MAX_IDS_PER_QUERY = 500;
+
+    /** "?,?,...,?" with {@code count} placeholders, for an IN (...) list. */
+    protected static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
 
     public void openConnection() {
         LOGGER.info("Opening connection to database... - RepoDB");
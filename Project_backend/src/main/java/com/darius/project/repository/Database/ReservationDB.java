@@ -6,14 +6,69 @@ import org.slf4j.*;
 import java.sql.*;
 import java.util.*;
 
-public class ReservationDB extends RepoDB<Integer, Reservation> implements ReservationRepository {
+public final class ReservationDB extends RepoDB<Integer, Reservation> implements ReservationRepository {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ReservationDB.class);
     public ReservationDB() {
         openConnection();
+        try (Statement statement = connection.createStatement()) {
+            // Serves findByTripId and its pages without scanning the table.
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_reservations_trip ON reservations (tripId, id)");
+        } catch (SQLException e) {
+            LOGGER.error("Error creating reservation index, error: {}", e.getMessage(), e);
+        }
         LOGGER.info("ReservationDB initialized, connection opened");
     }
 
+    @Override
+    public List<Reservation> findPageByTripId(Integer tripId, Integer afterId, int limit) {
+        LOGGER.info("Finding {} reservations for trip ID: {} after ID: {}", limit, tripId, afterId);
+        List<Reservation> reservations = new ArrayList<>();
+        try {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM reservations WHERE tripId = ? AND id > ? ORDER BY id LIMIT ?")) {
+                statement.setInt(1, tripId);
+                statement.setInt(2, afterId != null ? afterId : Integer.MIN_VALUE);
+                statement.setInt(3, limit);
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    reservations.add(new Reservation(
+                            resultSet.getInt("id"),
+                            resultSet.getInt("tripId"),
+                            resultSet.getInt("customerId"),
+                            resultSet.getInt("numberOfTickets"))
+                    );
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error finding reservations for trip ID {} after ID {}, error: {}", tripId, afterId, e.getMessage(), e);
+        }
+        return reservations;
+    }
+
+    @Override
+    public List<Reservation> findPage(Integer afterId, int limit) {
+        LOGGER.info("Finding {} reservations after ID: {}", limit, afterId);
+        List<Reservation> reservations = new ArrayList<>();
+        try {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM reservations WHERE id > ? ORDER BY id LIMIT ?")) {
+                statement.setInt(1, afterId != null ? afterId : Integer.MIN_VALUE);
+                statement.setInt(2, limit);
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    reservations.add(new Reservation(
+                            resultSet.getInt("id"),
+                            resultSet.getInt("tripId"),
+                            resultSet.getInt("customerId"),
+                            resultSet.getInt("numberOfTickets"))
+                    );
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error finding reservations after ID {}, error: {}", afterId, e.getMessage(), e);
+        }
+        return reservations;
+    }
+
     @Override
     public List<Reservation> findByTripId(Integer tripId) {
         LOGGER.info("Finding reservations for trip ID: {}", tripId);
@@ -0,0 +1,357 @@
+package com.darius.project.repository.Database;
+
+import org.slf4j.*;
+import org.sqlite.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only ledger of reservation lifecycle events, written as fixed-size binary records into memory-mapped segment
+ * files. A {@link GroupCommitWriter} write hands its events over inside the booking's transaction, but they are only
+ * staged there: the sequence the group's last event will get is checkpointed into {@code journal_checkpoints} by that
+ * transaction, and the records are written once it has committed. The events of a write rolled back to its savepoint,
+ * or of a group that rolls back, are dropped unwritten, so the journal holds only committed events. On startup
+ * anything past the checkpoint is discarded; a journal that ends before it lost committed events, e.g. to a crash
+ * between the commit and the write.
+ */
+public class ReservationJournal implements GroupCommitWriter.CommitHook, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReservationJournal.class);
+
+    public enum EventType {
+        CREATED, CANCELLED, SEATS_ADJUSTED;
+
+        private static EventType of(int code) {
+            return code >= 1 && code <= values().length ? values()[code - 1] : null;
+        }
+    }
+
+    public static final class Event {
+        private final EventType type;
+        private final long sequence;
+        private final long timestampMillis;
+        private final int tripId;
+        private final int reservationId;
+        private final int customerId;
+        // Tickets for CREATED/CANCELLED; the change in available seats for SEATS_ADJUSTED.
+        private final int seats;
+        // Available seats once the change is applied; only set for SEATS_ADJUSTED.
+        private final int seatsAfter;
+
+        private Event(EventType type, long sequence, long timestampMillis, int tripId, int reservationId, int customerId, int seats, int seatsAfter) {
+            this.type = type;
+            this.sequence = sequence;
+            this.timestampMillis = timestampMillis;
+            this.tripId = tripId;
+            this.reservationId = reservationId;
+            this.customerId = customerId;
+            this.seats = seats;
+            this.seatsAfter = seatsAfter;
+        }
+
+        public static Event created(int tripId, int reservationId, int customerId, int tickets) {
+            return new Event(EventType.CREATED, 0, 0, tripId, reservationId, customerId, tickets, 0);
+        }
+
+        public static Event cancelled(int tripId, int reservationId, int customerId, int tickets) {
+            return new Event(EventType.CANCELLED, 0, 0, tripId, reservationId, customerId, tickets, 0);
+        }
+
+        public static Event seatsAdjusted(int tripId, int delta, int seatsAfter) {
+            return new Event(EventType.SEATS_ADJUSTED, 0, 0, tripId, 0, 0, delta, seatsAfter);
+        }
+
+        public EventType getType() { return type; }
+        public long getSequence() { return sequence; }
+        public long getTimestampMillis() { return timestampMillis; }
+        public int getTripId() { return tripId; }
+        public int getReservationId() { return reservationId; }
+        public int getCustomerId() { return customerId; }
+        public int getSeats() { return seats; }
+        public int getSeatsAfter() { return seatsAfter; }
+    }
+
+    // type(1) sequence(8) timestamp(8) tripId(4) reservationId(4) customerId(4) seats(4) seatsAfter(4) crc(4), padded.
+    static final int RECORD_SIZE = 48;
+    private static final int CRC_OFFSET = 37;
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final String name;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long forceIntervalNanos;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSequence;
+    // Last sequence whose transaction committed.
+    private long committedSequence;
+    // Events of the running group, in order; those from writeStart on belong to the write running now.
+    private final List<Event> staged = new ArrayList<>();
+    private int writeStart;
+    private long lastForceNanos = System.nanoTime();
+
+    public ReservationJournal(String name) {
+        this.name = name;
+        this.directory = Paths.get(Config.getProperty("journal.dir", "journal"), name);
+        int records = Math.max(1, Config.getIntProperty("journal.segment.bytes", 16 * 1024 * 1024) / RECORD_SIZE);
+        this.segmentBytes = records * RECORD_SIZE;
+        this.forceIntervalNanos = Config.getIntProperty("journal.force.interval.ms", 1000) * 1_000_000L;
+        try {
+            Files.createDirectories(directory);
+            long checkpoint = readCheckpoint();
+            long discarded = truncateAfter(checkpoint);
+            committedSequence = checkpoint;
+            LOGGER.info("ReservationJournal '{}' recovered at sequence {}, discarded {} uncommitted events", name, checkpoint, discarded);
+        } catch (IOException | SQLException e) {
+            throw new IllegalStateException("Could not open reservation journal " + directory, e);
+        }
+    }
+
+    /**
+     * Hands over the events of one write, to be journaled if it commits. Call only from inside a
+     * {@link GroupCommitWriter.Write}.
+     */
+    public void append(Event... events) {
+        long now = System.currentTimeMillis();
+        for (Event event : events) {
+            staged.add(new Event(event.type, 0, now, event.tripId, event.reservationId, event.customerId, event.seats, event.seatsAfter));
+        }
+    }
+
+    @Override
+    public void beforeWrite() {
+        writeStart = staged.size();
+    }
+
+    @Override
+    public void afterWriteRollback() {
+        staged.subList(writeStart, staged.size()).clear();
+    }
+
+    @Override
+    public void beforeCommit(Connection connection) throws SQLException {
+        if (staged.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement("INSERT OR REPLACE INTO journal_checkpoints (name, sequence) VALUES (?, ?)")) {
+            statement.setString(1, name);
+            statement.setLong(2, committedSequence + staged.size());
+            statement.executeUpdate();
+        }
+    }
+
+    @Override
+    public void afterCommit() {
+        if (!staged.isEmpty()) {
+            long last = committedSequence + staged.size();
+            try {
+                for (Event event : staged) {
+                    if (segment.remaining() < RECORD_SIZE) {
+                        roll();
+                    }
+                    writeRecord(segment, new Event(event.type, nextSequence++, event.timestampMillis, event.tripId, event.reservationId,
+                            event.customerId, event.seats, event.seatsAfter));
+                }
+            } catch (IOException | RuntimeException e) {
+                // Committed but not journaled; the journal goes on in a new segment after the lost events.
+                LOGGER.error("Error journaling {} committed events, error: {}", staged.size(), e.getMessage(), e);
+                skipTo(last + 1);
+            } finally {
+                staged.clear();
+                committedSequence = last;
+            }
+        }
+        long now = System.nanoTime();
+        if (now - lastForceNanos >= forceIntervalNanos) {
+            try {
+                segment.force();
+            } catch (UncheckedIOException e) {
+                LOGGER.error("Error flushing reservation journal, error: {}", e.getMessage(), e);
+            }
+            lastForceNanos = now;
+        }
+    }
+
+    @Override
+    public void afterRollback() {
+        if (!staged.isEmpty()) {
+            LOGGER.warn("Dropped {} journal events of a group that rolled back", staged.size());
+            staged.clear();
+        }
+    }
+
+    private void skipTo(long sequence) {
+        nextSequence = sequence;
+        try {
+            roll(sequence);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Error opening a new reservation journal segment, error: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (segment != null) {
+                segment.force();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error closing reservation journal.", e);
+        }
+    }
+
+    private long readCheckpoint() throws SQLException {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl(Config.getProperty("db.url"));
+        dataSource.setBusyTimeout(Config.getIntProperty("db.busy.timeout.ms", 5000));
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS journal_checkpoints (name VARCHAR(64) PRIMARY KEY, sequence INTEGER NOT NULL)");
+            try (PreparedStatement select = connection.prepareStatement("SELECT sequence FROM journal_checkpoints WHERE name = ?")) {
+                select.setString(1, name);
+                ResultSet resultSet = select.executeQuery();
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Drops every event after {@code sequence} and positions the journal to append {@code sequence + 1}. Returns how
+     * many events were dropped.
+     */
+    private long truncateAfter(long sequence) throws IOException {
+        closeSegment();
+        List<Path> segments = segments();
+        long discarded = 0;
+        Path keep = null;
+        for (Path path : segments) {
+            if (firstSequence(path) > sequence) {
+                long[] count = new long[1];
+                readSegment(path, event -> count[0]++);
+                discarded += count[0];
+                Files.delete(path);
+            } else {
+                keep = path;
+            }
+        }
+        if (keep == null) {
+            openSegment(sequence + 1);
+            nextSequence = sequence + 1;
+            return discarded;
+        }
+        openSegment(firstSequence(keep));
+        long last = firstSequence(keep) - 1;
+        int position = 0;
+        while (position + RECORD_SIZE <= segment.capacity()) {
+            Event event = readRecord(segment, position);
+            if (event == null || event.sequence != last + 1 || event.sequence > sequence) {
+                break;
+            }
+            last = event.sequence;
+            position += RECORD_SIZE;
+        }
+        if (last < sequence) {
+            // Committed in the database, but the mapped pages never reached the disk (e.g. a power loss).
+            LOGGER.warn("Reservation journal '{}' ends at sequence {}, behind the checkpoint {}", name, last, sequence);
+            roll(sequence + 1);
+        } else {
+            for (int i = position; i + RECORD_SIZE <= segment.capacity() && segment.get(i) != 0; i += RECORD_SIZE) {
+                if (readRecord(segment, i) != null) {
+                    discarded++;
+                }
+                segment.put(i, new byte[RECORD_SIZE]);
+            }
+            segment.position(position);
+        }
+        nextSequence = sequence + 1;
+        return discarded;
+    }
+
+    private void roll() throws IOException {
+        roll(nextSequence);
+    }
+
+    private void roll(long firstSequence) throws IOException {
+        segment.force();
+        closeSegment();
+        openSegment(firstSequence);
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+
+    private void closeSegment() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            segment = null;
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            List<Path> paths = new ArrayList<>();
+            stream.forEach(paths::add);
+            paths.sort(Comparator.comparingLong(ReservationJournal::firstSequence));
+            return paths;
+        }
+    }
+
+    private static long firstSequence(Path path) {
+        String fileName = path.getFileName().toString();
+        return Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void readSegment(Path path, Consumer<Event> consumer) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            for (int position = 0; position + RECORD_SIZE <= buffer.capacity(); position += RECORD_SIZE) {
+                Event event = readRecord(buffer, position);
+                if (event == null) {
+                    break;
+                }
+                consumer.accept(event);
+            }
+        }
+    }
+
+    private static void writeRecord(ByteBuffer buffer, Event event) {
+        int start = buffer.position();
+        buffer.put((byte) (event.type.ordinal() + 1))
+                .putLong(event.sequence)
+                .putLong(event.timestampMillis)
+                .putInt(event.tripId)
+                .putInt(event.reservationId)
+                .putInt(event.customerId)
+                .putInt(event.seats)
+                .putInt(event.seatsAfter);
+        buffer.putInt(checksum(buffer, start));
+        buffer.position(start + RECORD_SIZE);
+    }
+
+    /** Null at the end of the written data: an empty slot or a torn record. */
+    private static Event readRecord(ByteBuffer buffer, int position) {
+        EventType type = EventType.of(buffer.get(position));
+        if (type == null || buffer.getInt(position + CRC_OFFSET) != checksum(buffer, position)) {
+            return null;
+        }
+        return new Event(type, buffer.getLong(position + 1), buffer.getLong(position + 9), buffer.getInt(position + 17),
+                buffer.getInt(position + 21), buffer.getInt(position + 25), buffer.getInt(position + 29), buffer.getInt(position + 33));
+    }
+
+    private static int checksum(ByteBuffer buffer, int position) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(position, CRC_OFFSET));
+        return (int) crc.getValue();
+    }
+}
@@ -2,10 +2,11 @@ package com.darius.project.repository.Database;
 import com.darius.project.domain.Trip;
 import com.darius.project.repository.GenericRepos.TripRepository;
 import org.slf4j.*;
+import org.sqlite.*;
 import java.sql.*;
 import java.util.*;
 
-public class TripDB extends RepoDB<Integer, Trip> implements TripRepository {
+public final class TripDB extends RepoDB<Integer, Trip> implements TripRepository {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TripDB.class);
     public TripDB() {
@@ -91,6 +92,82 @@ public class TripDB extends RepoDB<Integer, Trip> implements TripRepository {
         return trips.iterator();
     }
 
+    @Override
+    public List<Trip> findPage(Order order, String afterKey, Integer afterId, int limit) {
+        LOGGER.info("Finding {} trips by {} after ID: {}", limit, order, afterId);
+
+        String column = switch (order) {
+            case ID -> "id";
+            case PRICE -> "price";
+            case DEPARTURE -> "departureTime";
+        };
+        String where = afterId == null ? "" : order == Order.ID ? "WHERE id > ? "
+                : "WHERE " + column + " > ? OR (" + column + " = ? AND id > ?) ";
+        String orderBy = order == Order.ID ? "ORDER BY id " : "ORDER BY " + column + ", id ";
+        List<Trip> trips = new ArrayList<>();
+        try {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM trips " + where + orderBy + "LIMIT ?")) {
+                int index = 1;
+                if (afterId != null && order != Order.ID) {
+                    Object key = order == Order.PRICE ? (Object) Double.parseDouble(afterKey) : afterKey;
+                    statement.setObject(index++, key);
+                    statement.setObject(index++, key);
+                }
+                if (afterId != null) {
+                    statement.setInt(index++, afterId);
+                }
+                statement.setInt(index, limit);
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    trips.add(new Trip(
+                            resultSet.getInt("id"),
+                            resultSet.getString("attractionName"),
+                            resultSet.getString("transportCompany"),
+                            resultSet.getString("departureTime"),
+                            resultSet.getDouble("price"),
+                            resultSet.getInt("availableSeats")
+                    ));
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error finding trips by {} after ID: {}, Error: {}", order, afterId, e.getMessage(), e);
+        }
+        return trips;
+    }
+
+    @Override
+    public List<Trip> findAllById(Collection<Integer> ids) {
+        LOGGER.info("Finding {} trips by ID", ids.size());
+
+        List<Trip> trips = new ArrayList<>();
+        List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        try {
+            for (int from = 0; from < distinct.size(); from += MAX_IDS_PER_QUERY) {
+                List<Integer> chunk = distinct.subList(from, Math.min(from + MAX_IDS_PER_QUERY, distinct.size()));
+                try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM trips WHERE id IN (" + placeholders(chunk.size()) + ")")) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setInt(i + 1, chunk.get(i));
+                    }
+                    ResultSet resultSet = statement.executeQuery();
+                    while (resultSet.next()) {
+                        trips.add(new Trip(
+                                resultSet.getInt("id"),
+                                resultSet.getString("attractionName"),
+                                resultSet.getString("transportCompany"),
+                                resultSet.getString("departureTime"),
+                                resultSet.getDouble("price"),
+                                resultSet.getInt("availableSeats")
+                        ));
+                    }
+                }
+            }
+            LOGGER.info("Found {} of {} trips", trips.size(), distinct.size());
+        } catch (Exception e) {
+            LOGGER.error("Error finding trips by ID, Error: {}", e.getMessage(), e);
+        }
+        return trips;
+    }
+
     @Override
     public Trip findById(Integer id) {
         LOGGER.info("Finding trip by ID: {}", id);
@@ -142,6 +219,48 @@ public class TripDB extends RepoDB<Integer, Trip> implements TripRepository {
         }
     }
 
+    // On a connection of its own: turning off auto-commit on the shared one would leak the transaction to every other
+    // thread using it. IMMEDIATE takes the write lock up front, waiting for the other process instead of failing midway.
+    @Override
+    public void saveAll(List<Trip> trips, int batchSize) {
+        LOGGER.info("Saving {} trips in batches of {}", trips.size(), batchSize);
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl(Config.getProperty("db.url"));
+        dataSource.setTransactionMode("IMMEDIATE");
+        dataSource.setBusyTimeout(Config.getIntProperty("db.busy.timeout.ms", 5000));
+        try (Connection batchConnection = dataSource.getConnection()) {
+            batchConnection.setAutoCommit(false);
+            try (PreparedStatement statement = batchConnection.prepareStatement(UPSERT_SQL)) {
+                for (int i = 0; i < trips.size(); i++) {
+                    bindTrip(statement, trips.get(i));
+                    statement.addBatch();
+                    if ((i + 1) % batchSize == 0 || i == trips.size() - 1) {
+                        statement.executeBatch();
+                    }
+                }
+                batchConnection.commit();
+            } catch (SQLException e) {
+                batchConnection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Error saving {} trips, error: {}", trips.size(), e.getMessage(), e);
+            throw new IllegalStateException("Could not save trips: " + e.getMessage(), e);
+        }
+    }
+
+    private static final String UPSERT_SQL = "INSERT INTO trips VALUES(?,?,?,?,?,?) ON CONFLICT(id) DO UPDATE SET attractionName = excluded.attractionName, "
+            + "transportCompany = excluded.transportCompany, departureTime = excluded.departureTime, price = excluded.price, availableSeats = excluded.availableSeats";
+
+    private static void bindTrip(PreparedStatement statement, Trip trip) throws SQLException {
+        statement.setInt(1, trip.getId());
+        statement.setString(2, trip.getAttractionName());
+        statement.setString(3, trip.getTransportCompany());
+        statement.setString(4, trip.getDepartureTime());
+        statement.setDouble(5, trip.getPrice());
+        statement.setInt(6, trip.getAvailableSeats());
+    }
+
     @Override
     public void update(Integer id, Trip trip) {
         LOGGER.info("Updating trip with ID: {}, attraction: {}", id, trip.getAttractionName());
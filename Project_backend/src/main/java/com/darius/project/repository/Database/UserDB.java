@@ -6,7 +6,7 @@ import org.slf4j.*;
 import java.sql.*;
 import java.util.*;
 
-public class UserDB extends RepoDB<Integer, User> implements UserRepository {
+public final class UserDB extends RepoDB<Integer, User> implements UserRepository {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UserDB.class);
     public UserDB(){
@@ -143,6 +143,31 @@ public class UserDB extends RepoDB<Integer, User> implements UserRepository {
         return users.iterator();
     }
 
+    @Override
+    public List<User> findPage(Integer afterId, int limit) {
+        LOGGER.info("Finding {} users after ID: {}", limit, afterId);
+
+        List<User> users = new ArrayList<>();
+        try {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM Users WHERE id > ? ORDER BY id LIMIT ?")) {
+                statement.setInt(1, afterId != null ? afterId : Integer.MIN_VALUE);
+                statement.setInt(2, limit);
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    users.add(new User(
+                            resultSet.getInt("id"),
+                            resultSet.getString("username"),
+                            resultSet.getString("password")
+                    ));
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error finding users after ID: {}, Error: {}", afterId, e.getMessage(), e);
+        }
+        return users;
+    }
+
+    @Override
     public List<User> findAllByUsernameContaining(String partialUsername) {
         LOGGER.info("Finding users with username containing: '{}'", partialUsername);
 
@@ -0,0 +1,40 @@
+package com.darius.project.repository.GenericRepos;
+import com.darius.project.domain.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/** Writes that must land together: a reservation or seat hold, its customer and the trip's seat count. */
+public interface BookingRepository {
+    /**
+     * Inserts the reservation (and {@code newCustomer}, unless null) and takes its seats from the trip.
+     * Fails with IllegalStateException, writing nothing, when the trip no longer has enough seats.
+     */
+    CompletableFuture<Void> saveBooking(Customer newCustomer, Reservation reservation);
+
+    /**
+     * Saves reservations of one trip as a single write, taking all their seats with one update.
+     * Fails with IllegalStateException, writing nothing, when the trip no longer has enough seats for all of them.
+     */
+    CompletableFuture<Void> saveBookings(List<Customer> newCustomers, List<Reservation> reservations);
+
+    /** Deletes the reservation and returns its seats to the trip; completes with false if it was already gone. */
+    CompletableFuture<Boolean> deleteBooking(Reservation reservation);
+
+    /**
+     * Records a seat hold and takes its seats from the trip, so that no process sharing the database can book them.
+     * Fails with IllegalStateException, writing nothing, when the trip no longer has enough seats.
+     */
+    CompletableFuture<Void> saveHold(String holdId, int tripId, int tickets, long expiresAtMillis);
+
+    /** Deletes the hold and returns its seats to the trip; completes with false if it was already gone. */
+    CompletableFuture<Boolean> deleteHold(String holdId);
+
+    /**
+     * Replaces the hold by the reservation (and {@code newCustomer}, unless null); the seats stay taken. Fails with
+     * IllegalArgumentException, writing nothing, when the hold is gone.
+     */
+    CompletableFuture<Void> confirmHold(String holdId, Customer newCustomer, Reservation reservation);
+
+    /** Deletes the holds that expired before {@code nowMillis} and returns their seats; completes with the seats returned by trip. */
+    CompletableFuture<Map<Integer, Integer>> deleteExpiredHolds(long nowMillis);
+}
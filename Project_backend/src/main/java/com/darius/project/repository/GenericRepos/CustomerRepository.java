@@ -1,6 +1,10 @@
 package com.darius.project.repository.GenericRepos;
 import com.darius.project.domain.Customer;
+import java.util.Collection;
+import java.util.List;
 
 public interface CustomerRepository extends GenericRepository<Integer, Customer> {
     Customer findByCustomerName(String customerName);
+    // Ids that are not found are left out of the result.
+    List<Customer> findAllById(Collection<Integer> ids);
 }
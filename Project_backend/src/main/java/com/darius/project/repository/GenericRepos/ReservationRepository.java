@@ -4,4 +4,8 @@ import java.util.List;
 
 public interface ReservationRepository extends GenericRepository<Integer, Reservation> {
     List<Reservation> findByTripId(Integer tripId);
+    // Up to limit of the trip's reservations ordered by id, starting after afterId; the first page when afterId is null.
+    List<Reservation> findPageByTripId(Integer tripId, Integer afterId, int limit);
+    // Up to limit of all reservations ordered by id, starting after afterId; the first page when afterId is null.
+    List<Reservation> findPage(Integer afterId, int limit);
 }
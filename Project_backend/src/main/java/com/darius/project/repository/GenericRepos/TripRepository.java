@@ -1,8 +1,20 @@
 package com.darius.project.repository.GenericRepos;
 import com.darius.project.domain.Trip;
+import java.util.Collection;
 import java.util.List;
 
 public interface TripRepository extends GenericRepository<Integer, Trip> {
+    /** Orders a trip listing can be paged in; ties are broken by id. */
+    enum Order { ID, PRICE, DEPARTURE }
+
     List<Trip> findByAttractionAndTime(String attraction, String startTime, String endTime);
     List<Trip> findAllByAttractionContaining(String partial);
+    // Ids that are not found are left out of the result.
+    List<Trip> findAllById(Collection<Integer> ids);
+    // Up to limit trips following the one with afterId (and, unless ordered by id, the order value afterKey); the
+    // first page when afterId is null.
+    List<Trip> findPage(Order order, String afterKey, Integer afterId, int limit);
+    // Stores the trips in one transaction, sent as JDBC batches of batchSize rows; a trip whose id is taken replaces
+    // the stored one. Nothing is stored when any row fails, and the failure is thrown.
+    void saveAll(List<Trip> trips, int batchSize);
 }
\ No newline at end of file
@@ -1,6 +1,10 @@
 package com.darius.project.repository.GenericRepos;
 import com.darius.project.domain.User;
+import java.util.List;
 
 public interface UserRepository extends GenericRepository<Integer, User> {
     User findByUsername(String username);
+    List<User> findAllByUsernameContaining(String partialUsername);
+    // Up to limit users ordered by id, starting after afterId; the first page when afterId is null.
+    List<User> findPage(Integer afterId, int limit);
 }
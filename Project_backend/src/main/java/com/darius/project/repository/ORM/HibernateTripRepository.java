@@ -4,12 +4,11 @@ import com.darius.project.repository.GenericRepos.TripRepository;
 import org.hibernate.*;
 import org.hibernate.query.*;
 import org.slf4j.*;
+import java.sql.PreparedStatement;
 import java.util.*;
-import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 
-@Repository
 public class HibernateTripRepository implements TripRepository {
     private static final Logger LOGGER = LoggerFactory.getLogger(HibernateTripRepository.class);
     private final SessionFactory sessionFactory;
@@ -44,11 +43,45 @@ public class HibernateTripRepository implements TripRepository {
         }
     }
 
+    // One transaction per call; the rows go through plain JDBC batches, since merge() would first select every trip.
+    @Transactional
+    public void saveAll(List<Trip> trips, int batchSize) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            try {
+                session.doWork(connection -> {
+                    try (PreparedStatement statement = connection.prepareStatement("INSERT INTO trips (id, attractionName, transportCompany, departureTime, price, availableSeats) "
+                            + "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT(id) DO UPDATE SET attractionName = excluded.attractionName, transportCompany = excluded.transportCompany, "
+                            + "departureTime = excluded.departureTime, price = excluded.price, availableSeats = excluded.availableSeats")) {
+                        for (int i = 0; i < trips.size(); i++) {
+                            Trip trip = trips.get(i);
+                            statement.setInt(1, trip.getId());
+                            statement.setString(2, trip.getAttractionName());
+                            statement.setString(3, trip.getTransportCompany());
+                            statement.setString(4, trip.getDepartureTime());
+                            statement.setDouble(5, trip.getPrice());
+                            statement.setInt(6, trip.getAvailableSeats());
+                            statement.addBatch();
+                            if ((i + 1) % batchSize == 0 || i == trips.size() - 1) {
+                                statement.executeBatch();
+                            }
+                        }
+                    }
+                });
+                tx.commit();
+            } catch (RuntimeException e) {
+                tx.rollback();
+                throw e;
+            }
+        }
+    }
+
     @Transactional
     public void update(Integer id, Trip entity) {
         entity.setId(id);
         try (Session session = sessionFactory.openSession()) {
             Transaction tx = session.beginTransaction();
+            session.merge(entity);
             tx.commit();
         }
     }
@@ -84,4 +117,39 @@ public class HibernateTripRepository implements TripRepository {
             return q.list();
         }
     }
+
+    @Transactional(readOnly = true)
+    public List<Trip> findAllById(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try (Session session = sessionFactory.openSession()) {
+            Query<Trip> q = session.createQuery("FROM Trip WHERE id IN :ids", Trip.class);
+            q.setParameterList("ids", new HashSet<>(ids));
+            return q.list();
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<Trip> findPage(Order order, String afterKey, Integer afterId, int limit) {
+        String property = switch (order) {
+            case ID -> "id";
+            case PRICE -> "price";
+            case DEPARTURE -> "departureTime";
+        };
+        String where = afterId == null ? "" : order == Order.ID ? " WHERE id > :id"
+                : " WHERE " + property + " > :key OR (" + property + " = :key AND id > :id)";
+        String orderBy = order == Order.ID ? " ORDER BY id" : " ORDER BY " + property + ", id";
+        try (Session session = sessionFactory.openSession()) {
+            Query<Trip> q = session.createQuery("FROM Trip" + where + orderBy, Trip.class);
+            if (afterId != null) {
+                q.setParameter("id", afterId);
+                if (order != Order.ID) {
+                    q.setParameter("key", order == Order.PRICE ? (Object) Double.parseDouble(afterKey) : afterKey);
+                }
+            }
+            q.setMaxResults(limit);
+            return q.list();
+        }
+    }
 }
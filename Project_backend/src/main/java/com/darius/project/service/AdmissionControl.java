@@ -0,0 +1,67 @@
+package com.darius.project.service;
+import org.slf4j.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Caps how many requests use the database-backed services at once. A request beyond the cap waits in a bounded
+ * queue for at most {@code maxWaitMillis}; when the queue is full, or the wait runs out, it is refused at once. Under
+ * overload requests are shed instead of piling up behind each other, so the ones admitted keep their latency.
+ * Every {@link #tryEnter()} that returns true must be paired with an {@link #exit()}.
+ */
+public class AdmissionControl {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public AdmissionControl(int maxConcurrent, int maxQueued, long maxWaitMillis) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /** Admits the request, waiting in the queue if it has room; false when the request is refused. */
+    public boolean tryEnter() {
+        if (permits.tryAcquire()) {
+            admitted.increment();
+            return true;
+        }
+        if (waiting.incrementAndGet() > maxQueued) {
+            waiting.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        queued.increment();
+        try {
+            if (permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                admitted.increment();
+                return true;
+            }
+            LOGGER.warn("Request refused after waiting {} ms for admission", maxWaitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void exit() {
+        permits.release();
+    }
+
+    public int getInFlight() { return maxConcurrent - permits.availablePermits(); }
+    public int getWaiting() { return waiting.get(); }
+    public long getAdmitted() { return admitted.sum(); }
+    public long getQueued() { return queued.sum(); }
+    public long getRejected() { return rejected.sum(); }
+}
@@ -0,0 +1,263 @@
+package com.darius.project.service;
+import com.darius.project.domain.*;
+import com.darius.project.repository.GenericRepos.BookingRepository;
+import com.darius.project.repository.Database.Config;
+import org.slf4j.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reservation workflow shared by the socket server and the REST API. Seats are taken through
+ * {@link TripService#takeSeats} before anything is written, so two bookings racing for the last seats
+ * cannot both succeed. The seat update, the new customer and the reservation are then written as one
+ * transaction by the {@link BookingRepository}, which commits concurrent bookings together.
+ */
+public class BookingService implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingService.class);
+    private static final long COMMIT_TIMEOUT_MILLIS = Config.getIntProperty("db.executor.timeout.ms", 10000);
+    private final TripService tripService;
+    private final ReservationService reservationService;
+    private final CustomerService customerService;
+    private final BookingRepository bookingRepository;
+    private final IdGenerator reservationIds;
+    private final IdGenerator customerIds;
+    private final ConcurrentHashMap<Integer, TripActor> flashSaleActors = new ConcurrentHashMap<>();
+    private final int mailboxCapacity = Config.getIntProperty("flash.mailbox.capacity", 10000);
+    private final int maxBatch = Config.getIntProperty("flash.batch.max", 256);
+
+    public BookingService(TripService tripService, ReservationService reservationService, CustomerService customerService,
+                          BookingRepository bookingRepository, IdGenerator reservationIds, IdGenerator customerIds) {
+        this.tripService = tripService;
+        this.reservationService = reservationService;
+        this.customerService = customerService;
+        this.bookingRepository = bookingRepository;
+        this.reservationIds = reservationIds;
+        this.customerIds = customerIds;
+    }
+
+    /**
+     * Books {@code tickets} seats for the named customer, creating the customer if needed, and waits until the
+     * booking is committed.
+     * Throws IllegalArgumentException for an unknown trip and IllegalStateException when not enough seats are left.
+     */
+    public Reservation book(String customerName, String phone, Integer tripId, int tickets) {
+        return join(bookAsync(customerName, phone, tripId, tickets));
+    }
+
+    /** Like {@link #book}, but the returned future completes once the booking's group has committed. */
+    public CompletableFuture<Reservation> bookAsync(String customerName, String phone, Integer tripId, int tickets) {
+        LOGGER.info("Service: Booking {} tickets on trip with ID: {} for customer: {}", tickets, tripId, customerName);
+
+        TripActor actor = flashSaleActors.get(tripId);
+        if (actor != null) {
+            CompletableFuture<Reservation> booked = actor.book(customerName, phone, tickets);
+            if (booked != null) {
+                return booked;
+            }
+        }
+        switch (tripService.takeSeats(tripId, tickets)) {
+            case UNKNOWN_TRIP -> throw new IllegalArgumentException("Trip not found");
+            case SOLD_OUT -> throw new IllegalStateException("Not enough seats available");
+            case RESERVED -> { }
+        }
+        return persist(customerName, phone, tripId, tickets);
+    }
+
+    /** A booking whose seats are already taken in memory, waiting to be written. */
+    static final class PendingBooking {
+        final String customerName;
+        final String phone;
+        final int tickets;
+
+        PendingBooking(String customerName, String phone, int tickets) {
+            this.customerName = customerName;
+            this.phone = phone;
+            this.tickets = tickets;
+        }
+    }
+
+    /**
+     * Writes a booking whose seats were already taken in memory. If it is not written the seats go back to the
+     * counter, or the counter is reloaded when the database had fewer seats than it thought.
+     */
+    CompletableFuture<Reservation> persist(String customerName, String phone, Integer tripId, int tickets) {
+        return persistAll(tripId, List.of(new PendingBooking(customerName, phone, tickets))).thenApply(reservations -> reservations.get(0));
+    }
+
+    /** As {@link #persist}, for several bookings of one trip written together; they succeed or fail as one. */
+    CompletableFuture<List<Reservation>> persistAll(Integer tripId, List<PendingBooking> bookings) {
+        int tickets = bookings.stream().mapToInt(booking -> booking.tickets).sum();
+        List<Reservation> reservations = new ArrayList<>(bookings.size());
+        CompletableFuture<Void> written;
+        try {
+            Map<String, Customer> customers = new HashMap<>();
+            List<Customer> newCustomers = new ArrayList<>();
+            for (PendingBooking booking : bookings) {
+                Customer customer = customers.computeIfAbsent(booking.customerName, customerService::findByCustomerName);
+                if (customer == null) {
+                    customer = new Customer(customerIds.nextId(), booking.customerName, "", booking.phone);
+                    customers.put(booking.customerName, customer);
+                    newCustomers.add(customer);
+                }
+                reservations.add(new Reservation(reservationIds.nextId(), tripId, customer.getId(), booking.tickets));
+            }
+            written = bookingRepository.saveBookings(newCustomers, reservations);
+        } catch (Exception e) {
+            LOGGER.error("Service: Error booking trip with ID: {}, returning {} seats, error: {}", tripId, tickets, e.getMessage(), e);
+            tripService.returnSeats(tripId, tickets);
+            throw e;
+        }
+        return settle(tripId, tickets, written).thenApply(ignored -> {
+            LOGGER.info("Service: Booked {} reservations starting with ID: {} on trip with ID: {}", reservations.size(), reservations.get(0).getId(), tripId);
+            return reservations;
+        });
+    }
+
+    /**
+     * Records a hold whose seats were already taken in memory; the stored seats go down with it, so other processes
+     * sharing the database cannot book them. If it is not written the seats go back as after {@link #persist}.
+     */
+    CompletableFuture<Void> persistHold(String holdId, Integer tripId, int tickets, long expiresAtMillis) {
+        CompletableFuture<Void> written;
+        try {
+            written = bookingRepository.saveHold(holdId, tripId, tickets, expiresAtMillis);
+        } catch (Exception e) {
+            LOGGER.error("Service: Error holding seats on trip with ID: {}, returning {} seats, error: {}", tripId, tickets, e.getMessage(), e);
+            tripService.returnSeats(tripId, tickets);
+            throw e;
+        }
+        return settle(tripId, tickets, written);
+    }
+
+    /** Books the seats of a stored hold. Fails with IllegalArgumentException when the hold is no longer stored. */
+    CompletableFuture<Reservation> confirmHold(String holdId, String customerName, String phone, Integer tripId, int tickets) {
+        Customer customer = customerService.findByCustomerName(customerName);
+        Customer newCustomer = null;
+        if (customer == null) {
+            newCustomer = new Customer(customerIds.nextId(), customerName, "", phone);
+            customer = newCustomer;
+        }
+        Reservation reservation = new Reservation(reservationIds.nextId(), tripId, customer.getId(), tickets);
+        return bookingRepository.confirmHold(holdId, newCustomer, reservation).thenApply(ignored -> {
+            // The seats were taken with the hold; only the reservation is new.
+            tripService.seatsChanged(tripId);
+            LOGGER.info("Service: Confirmed hold with ID: {} as reservation with ID: {}", holdId, reservation.getId());
+            return reservation;
+        });
+    }
+
+    /** Deletes the stored hold and, once that is committed, returns its seats; false if it was already gone. */
+    CompletableFuture<Boolean> releaseHold(String holdId, Integer tripId, int tickets) {
+        return bookingRepository.deleteHold(holdId).thenApply(deleted -> {
+            if (deleted) {
+                tripService.seatsFreed(tripId, tickets);
+            }
+            return deleted;
+        });
+    }
+
+    /** Deletes the stored holds that expired before {@code nowMillis}, whichever process made them; completes with their trips. */
+    CompletableFuture<Set<Integer>> releaseExpiredHolds(long nowMillis) {
+        return bookingRepository.deleteExpiredHolds(nowMillis).thenApply(released -> {
+            released.forEach(tripService::seatsFreed);
+            return released.keySet();
+        });
+    }
+
+    /** Keeps the counter in step with a write that took {@code tickets} seats it had already taken in memory. */
+    private <T> CompletableFuture<T> settle(Integer tripId, int tickets, CompletableFuture<T> written) {
+        return written.handle((value, error) -> {
+            if (error == null) {
+                tripService.seatsWritten(tripId, tickets);
+                return value;
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof IllegalStateException) {
+                // The stored seats ran out before the counter did.
+                tripService.seatsRanOut(tripId, tickets);
+            } else {
+                LOGGER.error("Service: Error writing seats of trip with ID: {}, returning {} seats, error: {}", tripId, tickets, cause.getMessage(), cause);
+                tripService.returnSeats(tripId, tickets);
+            }
+            throw error instanceof CompletionException completion ? completion : new CompletionException(cause);
+        });
+    }
+
+    /** Cancels a reservation and returns its seats; null when there is no such reservation. */
+    public Reservation cancel(Integer reservationId) {
+        LOGGER.info("Service: Cancelling reservation with ID: {}", reservationId);
+
+        Reservation reservation = reservationService.findById(reservationId);
+        if (reservation == null) {
+            return null;
+        }
+        TripActor actor = flashSaleActors.get(reservation.getTrip());
+        CompletableFuture<Boolean> cancelled = actor == null ? null : actor.cancel(reservation);
+        if (!join(cancelled != null ? cancelled : cancelAsync(reservation))) {
+            LOGGER.info("Service: Reservation with ID: {} was already cancelled", reservationId);
+            return null;
+        }
+        LOGGER.info("Service: Cancelled reservation with ID: {}", reservationId);
+        return reservation;
+    }
+
+    /** Deletes the reservation and, once that is committed, returns its seats; false if it was already gone. */
+    CompletableFuture<Boolean> cancelAsync(Reservation reservation) {
+        return bookingRepository.deleteBooking(reservation).thenApply(deleted -> {
+            if (deleted) {
+                tripService.seatsFreed(reservation.getTrip(), reservation.getNumberOfTickets());
+            }
+            return deleted;
+        });
+    }
+
+    /**
+     * Switches a trip into or out of flash-sale mode. In flash-sale mode the trip's bookings and cancellations go
+     * through its own {@link TripActor}; switching off lets the actor finish what it has already accepted.
+     */
+    public void setFlashMode(int tripId, boolean enabled) {
+        LOGGER.info("Service: Turning flash-sale mode {} for trip with ID: {}", enabled ? "on" : "off", tripId);
+
+        if (enabled) {
+            flashSaleActors.computeIfAbsent(tripId, id -> new TripActor(id, this, tripService, mailboxCapacity, maxBatch));
+        } else {
+            TripActor actor = flashSaleActors.remove(tripId);
+            if (actor != null) {
+                actor.close();
+            }
+        }
+    }
+
+    public boolean isFlashMode(int tripId) {
+        return flashSaleActors.containsKey(tripId);
+    }
+
+    /** Stops every flash-sale actor once it has handed what it accepted to the writer. */
+    @Override
+    public void close() {
+        flashSaleActors.values().forEach(TripActor::close);
+        flashSaleActors.values().forEach(TripActor::awaitTermination);
+        flashSaleActors.clear();
+    }
+
+    /**
+     * Waits for a write to commit, at most {@code db.executor.timeout.ms}, for callers that answer only once it has.
+     * A write still pending then is not undone and may yet commit, so the caller reports the outcome as unknown.
+     */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.get(COMMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("Booking write failed", e.getCause());
+        } catch (TimeoutException e) {
+            LOGGER.warn("Service: Booking write not committed after {} ms, it may still be applied", COMMIT_TIMEOUT_MILLIS);
+            throw new RuntimeException("Booking write not committed after " + COMMIT_TIMEOUT_MILLIS + " ms, it may still be applied", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for the booking write", e);
+        }
+    }
+}
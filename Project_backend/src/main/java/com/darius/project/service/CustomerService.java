@@ -39,6 +39,17 @@ public class CustomerService {
         return customer;
     }
 
+    /** The customers with the given ids in one lookup, by id; missing ids are absent from the map. */
+    public Map<Integer, Customer> findAllById(Collection<Integer> ids) {
+        LOGGER.info("Service: Finding {} customers by ID", ids.size());
+
+        Map<Integer, Customer> customers = new HashMap<>();
+        for (Customer customer : customerRepository.findAllById(ids)) {
+            customers.put(customer.getId(), customer);
+        }
+        return customers;
+    }
+
     public List<Customer> findAll() {
         LOGGER.info("Service: Retrieving all customers");
 
@@ -0,0 +1,83 @@
+package com.darius.project.service;
+import org.slf4j.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A number that changes whenever the data the services serve may have changed. Every trip, reservation or user write
+ * through the services bumps it, and a watcher bumps it when another process writes one. Readers that
+ * remember the version they read at can tell, without a query, whether what they hold is still current, e.g. the trip
+ * snapshot and the REST API's ETags.
+ */
+public class DataVersion implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataVersion.class);
+
+    private final AtomicLong version = new AtomicLong();
+    // Told on the watcher thread whenever it sees the database counter move.
+    private final List<Runnable> watchListeners = new CopyOnWriteArrayList<>();
+    // Tells the versions of one run from those of an earlier one, which restarted counting.
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private ScheduledExecutorService watcher;
+
+    public long get() {
+        return version.get();
+    }
+
+    public void bump() {
+        version.incrementAndGet();
+    }
+
+    /** The current version as an entity tag, unique across restarts. */
+    public String tag() {
+        return "\"" + epoch + "-" + version.get() + "\"";
+    }
+
+    /**
+     * Adds a listener for writes the watcher sees, for state that must follow the database also when another process
+     * writes it. The watcher cannot tell this process's writes from others', so it is told about both.
+     */
+    public void addWatchListener(Runnable listener) {
+        watchListeners.add(listener);
+    }
+
+    /**
+     * Polls {@code externalVersion}, a counter that moves when trips, reservations or users are written, also outside
+     * the services (see {@code DataVersionDB}), and bumps the version and tells the watch listeners when it moves.
+     * Writes of other processes are seen within {@code intervalMillis}.
+     */
+    public synchronized void watch(LongSupplier externalVersion, long intervalMillis) {
+        if (watcher != null || intervalMillis <= 0) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "data-version");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicLong lastSeen = new AtomicLong(externalVersion.getAsLong());
+        watcher.scheduleWithFixedDelay(() -> {
+            long seen = externalVersion.getAsLong();
+            if (seen != lastSeen.getAndSet(seen)) {
+                bump();
+                LOGGER.debug("Database changed, data version now {}", version.get());
+                for (Runnable listener : watchListeners) {
+                    try {
+                        listener.run();
+                    } catch (RuntimeException e) {
+                        // Polling must go on.
+                        LOGGER.error("Error in data version listener, error: {}", e.getMessage(), e);
+                    }
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+        }
+    }
+}
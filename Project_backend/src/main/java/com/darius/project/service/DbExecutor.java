@@ -0,0 +1,115 @@
+package com.darius.project.service;
+import org.slf4j.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool for work that blocks on the database, so callers such as the REST controllers wait on a future
+ * instead of holding a request thread through a slow SQLite lock. It is sized for the database, not for the number of
+ * clients: SQLite writes one transaction at a time, so a few threads keep it busy. Work beyond the queue is refused at
+ * once with RejectedExecutionException. Work that has not started within {@code timeoutMillis} fails with
+ * TimeoutException and is skipped; either failure means nothing was done and the call can be retried. Work that has
+ * started gets {@code timeoutMillis} again to finish, after which its future fails with {@link StillRunningException};
+ * the work itself runs on, as it may already have written something, so the caller cannot tell whether it applied.
+ */
+public class DbExecutor implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DbExecutor.class);
+
+    /** Started work that did not finish within the timeout; it may still complete and apply what it writes. */
+    public static class StillRunningException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public StillRunningException(long timeoutMillis) {
+            super("Database work still running after " + timeoutMillis + " ms, it may still be applied");
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder stillRunning = new LongAdder();
+
+    public DbExecutor(int threads, int queueCapacity, long timeoutMillis) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "db-executor-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /** Runs {@code work} on the pool, unless it is still queued when the timeout runs out. */
+    public <T> CompletableFuture<T> supply(Supplier<T> work) {
+        return supplyCompose(() -> CompletableFuture.completedFuture(work.get()));
+    }
+
+    /**
+     * As {@link #supply}, for work that ends in a future of its own, e.g. a booking handed to the group commit: the
+     * pool thread is free again once the work is handed off, and the returned future completes with the work's.
+     */
+    public <T> CompletableFuture<T> supplyCompose(Supplier<CompletableFuture<T>> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // Whichever comes first, the start of the work or the timeout, claims the result.
+        AtomicBoolean claimed = new AtomicBoolean();
+        try {
+            executor.execute(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                CompletableFuture.delayedExecutor(timeoutMillis, TimeUnit.MILLISECONDS).execute(() -> {
+                    if (result.completeExceptionally(new StillRunningException(timeoutMillis))) {
+                        stillRunning.increment();
+                        LOGGER.warn("Database work still running after {} ms, no longer waiting for it", timeoutMillis);
+                    }
+                });
+                try {
+                    work.get().whenComplete((value, error) -> {
+                        if (error == null) {
+                            result.complete(value);
+                        } else {
+                            result.completeExceptionally(error);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            LOGGER.warn("Database work refused, {} tasks queued", executor.getQueue().size());
+            throw e;
+        }
+        CompletableFuture.delayedExecutor(timeoutMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            if (claimed.compareAndSet(false, true)) {
+                timedOut.increment();
+                LOGGER.warn("Database work still queued after {} ms, skipping it", timeoutMillis);
+                result.completeExceptionally(new TimeoutException("Database work still queued after " + timeoutMillis + " ms"));
+            }
+        });
+        return result;
+    }
+
+    /** The pool itself, for database work no caller waits for, e.g. storing a response that was already sent. */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public int getThreads() { return executor.getMaximumPoolSize(); }
+    public int getActive() { return executor.getActiveCount(); }
+    public int getQueued() { return executor.getQueue().size(); }
+    public int getQueueCapacity() { return queueCapacity; }
+    public long getCompleted() { return executor.getCompletedTaskCount(); }
+    public long getRejected() { return rejected.sum(); }
+    public long getTimedOut() { return timedOut.sum(); }
+    public long getStillRunning() { return stillRunning.sum(); }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
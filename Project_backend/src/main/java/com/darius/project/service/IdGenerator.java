@@ -0,0 +1,43 @@
+package com.darius.project.service;
+import com.darius.project.repository.Database.IdSequenceDB;
+import org.slf4j.*;
+import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out ids of one entity from blocks reserved in the database, so generating an id costs a database round trip
+ * only once per block. Ids left in a block when the process stops are never used.
+ */
+public class IdGenerator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdGenerator.class);
+    private final IdSequenceDB sequences;
+    private final String sequence;
+    private final String table;
+    private final int blockSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private int next = 0;
+    private int limit = 0;
+
+    public IdGenerator(IdSequenceDB sequences, String sequence, String table, int blockSize) {
+        this.sequences = sequences;
+        this.sequence = sequence;
+        this.table = table;
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    public int nextId() {
+        lock.lock();
+        try {
+            if (next >= limit) {
+                next = sequences.allocateBlock(sequence, table, blockSize);
+                limit = next + blockSize;
+            }
+            return next++;
+        } catch (SQLException e) {
+            LOGGER.error("Service: Error generating id for sequence: {}, error: {}", sequence, e.getMessage(), e);
+            throw new IllegalStateException("Could not generate id for " + sequence, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.darius.project.service;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Token buckets keyed per client (a connection, an IP address). Each bucket refills at {@code perSecond} tokens up
+ * to {@code burst}; a request takes one token or is refused. A bucket is a single timestamp updated by CAS: the time
+ * at which it will be full again, so taking a token costs one read and one compare-and-set and never blocks. Buckets
+ * that have refilled are dropped when the map grows, since a new bucket starts full anyway.
+ */
+public class RateLimiter<K> {
+    private static final int SWEEP_THRESHOLD = 4096;
+
+    private static final class TokenBucket {
+        // When the bucket would be full again; a token costs interval, and a full bucket lags now by burst intervals.
+        private final AtomicLong fullAtNanos;
+
+        private TokenBucket(long now) {
+            this.fullAtNanos = new AtomicLong(now);
+        }
+    }
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final ConcurrentHashMap<K, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public RateLimiter(double perSecond, int burst) {
+        this.nanosPerToken = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+        this.burstNanos = nanosPerToken * Math.max(1, burst);
+    }
+
+    /** Takes a token from the key's bucket; false when it is empty. */
+    public boolean tryAcquire(K key) {
+        long now = System.nanoTime();
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(now));
+            if (buckets.size() > SWEEP_THRESHOLD) {
+                sweep(now);
+            }
+        }
+        while (true) {
+            long fullAt = bucket.fullAtNanos.get();
+            long next = (fullAt - now > 0 ? fullAt : now) + nanosPerToken;
+            if (next - now > burstNanos) {
+                rejected.increment();
+                return false;
+            }
+            if (bucket.fullAtNanos.compareAndSet(fullAt, next)) {
+                allowed.increment();
+                return true;
+            }
+        }
+    }
+
+    /** Drops the key's bucket, e.g. when its connection closes. */
+    public void forget(K key) {
+        buckets.remove(key);
+    }
+
+    private void sweep(long now) {
+        if (sweeping.compareAndSet(false, true)) {
+            try {
+                buckets.values().removeIf(bucket -> bucket.fullAtNanos.get() - now <= 0);
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+
+    public long getAllowed() { return allowed.sum(); }
+    public long getRejected() { return rejected.sum(); }
+}
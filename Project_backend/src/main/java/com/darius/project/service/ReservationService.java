@@ -1,9 +1,11 @@
 package com.darius.project.service;
 
 import com.darius.project.domain.Reservation;
+import com.darius.project.repository.Database.Config;
 import com.darius.project.repository.GenericRepos.ReservationRepository;
 import org.slf4j.*;
 import java.util.*;
+import java.util.function.Consumer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -11,9 +13,15 @@ import org.springframework.stereotype.Service;
 public class ReservationService {
     private static final Logger LOGGER = LoggerFactory.getLogger(ReservationService.class);
     private final ReservationRepository reservationRepository;
+    private final DataVersion dataVersion;
+    private final int exportChunkRows;
 
     @Autowired
-    public ReservationService(ReservationRepository reservationRepository) { this.reservationRepository = reservationRepository; }
+    public ReservationService(ReservationRepository reservationRepository, DataVersion dataVersion) {
+        this.reservationRepository = reservationRepository;
+        this.dataVersion = dataVersion;
+        this.exportChunkRows = Math.max(1, Config.getIntProperty("export.chunk.rows", 1000));
+    }
 
     public List<Reservation> findByTripId(Integer tripId) {
         LOGGER.info("Service: Finding reservations for trip ID: {}", tripId);
@@ -22,6 +30,37 @@ public class ReservationService {
         return reservations;
     }
 
+    public List<Reservation> findPageByTripId(Integer tripId, Integer afterId, int limit) {
+        LOGGER.info("Service: Finding {} reservations for trip ID: {} after ID: {}", limit, tripId, afterId);
+        return reservationRepository.findPageByTripId(tripId, afterId, limit);
+    }
+
+    /**
+     * Hands every reservation, or every one of the trip's when {@code tripId} is not null, to {@code chunkConsumer} in ID
+     * order, {@code export.chunk.rows} at a time. Each chunk is a short query of its own, so memory stays flat however
+     * many reservations there are and no read is left open between chunks to hold off bookings. Returns the count.
+     */
+    public int exportAll(Integer tripId, Consumer<List<Reservation>> chunkConsumer) {
+        LOGGER.info("Service: Exporting reservations{}", tripId == null ? "" : " for trip ID: " + tripId);
+        int count = 0;
+        Integer afterId = null;
+        while (true) {
+            List<Reservation> chunk = tripId == null
+                    ? reservationRepository.findPage(afterId, exportChunkRows)
+                    : reservationRepository.findPageByTripId(tripId, afterId, exportChunkRows);
+            if (!chunk.isEmpty()) {
+                chunkConsumer.accept(chunk);
+                count += chunk.size();
+            }
+            if (chunk.size() < exportChunkRows) {
+                break;
+            }
+            afterId = chunk.get(chunk.size() - 1).getId();
+        }
+        LOGGER.info("Service: Exported {} reservations", count);
+        return count;
+    }
+
     public Reservation findById(Integer id) {
         LOGGER.info("Service: Finding reservation by ID: {}", id);
 
@@ -46,6 +85,7 @@ public class ReservationService {
 
         try {
             reservationRepository.save(id, reservation);
+            dataVersion.bump();
             LOGGER.info("Service: Successfully saved reservation with ID: {}", id);
         } catch (Exception e) {
             LOGGER.error("Service: Error saving reservation with ID: {}, error: {}", id, e.getMessage(), e);
@@ -63,6 +103,7 @@ public class ReservationService {
             }
 
             reservationRepository.delete(id);
+            dataVersion.bump();
             LOGGER.info("Service: Successfully deleted reservation with ID: {}", id);
         } catch (Exception e) {
             LOGGER.error("Service: Error deleting reservation with ID: {}, error: {}", id, e.getMessage(), e);
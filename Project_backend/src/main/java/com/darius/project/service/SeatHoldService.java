@@ -0,0 +1,167 @@
+package com.darius.project.service;
+import com.darius.project.domain.*;
+import org.slf4j.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Temporary seat holds. A hold takes its seats from the in-memory inventory and from the stored count, and is recorded
+ * in the database, so other processes sharing it cannot book the seats either. A hold that is neither confirmed nor
+ * released within the TTL expires on the {@link TimerWheel}, which gives the seats back. Only the process that made a
+ * hold can confirm it; if that process goes away, a sweep in any process gives the seats back once the hold has been
+ * expired for {@code sweepMillis}.
+ */
+public class SeatHoldService implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SeatHoldService.class);
+
+    public static final class Hold {
+        private final String id;
+        private final int tripId;
+        private final String customerName;
+        private final String phone;
+        private final int tickets;
+        private final long expiresAtMillis;
+        private volatile TimerWheel.Timeout timeout;
+
+        private Hold(String id, int tripId, String customerName, String phone, int tickets, long expiresAtMillis) {
+            this.id = id;
+            this.tripId = tripId;
+            this.customerName = customerName;
+            this.phone = phone;
+            this.tickets = tickets;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public String getId() { return id; }
+        public int getTripId() { return tripId; }
+        public String getCustomerName() { return customerName; }
+        public String getPhone() { return phone; }
+        public int getTickets() { return tickets; }
+        public long getExpiresAtMillis() { return expiresAtMillis; }
+    }
+
+    private final TripService tripService;
+    private final BookingService bookingService;
+    private final TimerWheel wheel;
+    private final long ttlMillis;
+    private final long sweepMillis;
+    private volatile boolean running = true;
+    private final ConcurrentHashMap<String, Hold> holds = new ConcurrentHashMap<>();
+    // Told the trip id whenever an expiry gives seats back, e.g. so the socket server can publish the new count.
+    private final List<IntConsumer> expiryListeners = new CopyOnWriteArrayList<>();
+
+    public SeatHoldService(TripService tripService, BookingService bookingService, TimerWheel wheel, long ttlMillis, long sweepMillis) {
+        this.tripService = tripService;
+        this.bookingService = bookingService;
+        this.wheel = wheel;
+        this.ttlMillis = ttlMillis;
+        this.sweepMillis = Math.max(1, sweepMillis);
+    }
+
+    /** Starts sweeping expired holds left behind by processes that stopped before expiring them. */
+    public void start() {
+        sweep();
+    }
+
+    public void addExpiryListener(IntConsumer listener) {
+        expiryListeners.add(listener);
+    }
+
+    /**
+     * Holds {@code tickets} seats for the customer.
+     * Throws IllegalArgumentException for an unknown trip and IllegalStateException when not enough seats are left.
+     */
+    public Hold hold(String customerName, String phone, Integer tripId, int tickets) {
+        LOGGER.info("Service: Holding {} tickets on trip with ID: {} for customer: {}", tickets, tripId, customerName);
+
+        switch (tripService.takeSeats(tripId, tickets)) {
+            case UNKNOWN_TRIP -> throw new IllegalArgumentException("Trip not found");
+            case SOLD_OUT -> throw new IllegalStateException("Not enough seats available");
+            case RESERVED -> { }
+        }
+        Hold hold = new Hold(UUID.randomUUID().toString(), tripId, customerName, phone, tickets, System.currentTimeMillis() + ttlMillis);
+        BookingService.join(bookingService.persistHold(hold.id, tripId, tickets, hold.expiresAtMillis));
+        holds.put(hold.id, hold);
+        hold.timeout = wheel.schedule(ttlMillis, () -> expire(hold));
+        LOGGER.info("Service: Created hold with ID: {} on trip with ID: {}", hold.id, tripId);
+        return hold;
+    }
+
+    /** Turns the hold into a reservation. Throws IllegalArgumentException when the hold is unknown or has expired. */
+    public Reservation confirm(String holdId) {
+        LOGGER.info("Service: Confirming hold with ID: {}", holdId);
+
+        Hold hold = take(holdId);
+        if (hold == null) {
+            throw new IllegalArgumentException("Hold not found or expired");
+        }
+        // If the write fails the stored hold stays until the sweep gives its seats back.
+        return BookingService.join(bookingService.confirmHold(hold.id, hold.customerName, hold.phone, hold.tripId, hold.tickets));
+    }
+
+    /** Gives the held seats back early; null when the hold is unknown or has already expired. */
+    public Hold release(String holdId) {
+        LOGGER.info("Service: Releasing hold with ID: {}", holdId);
+
+        Hold hold = take(holdId);
+        if (hold != null) {
+            BookingService.join(bookingService.releaseHold(hold.id, hold.tripId, hold.tickets));
+        }
+        return hold;
+    }
+
+    public int activeHolds() {
+        return holds.size();
+    }
+
+    private Hold take(String holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold != null && hold.timeout != null) {
+            hold.timeout.cancel();
+        }
+        return hold;
+    }
+
+    private void expire(Hold hold) {
+        if (!holds.remove(hold.id, hold)) {
+            return;
+        }
+        LOGGER.info("Service: Hold with ID: {} on trip with ID: {} expired", hold.id, hold.tripId);
+        // The write completes on the group-commit thread, so the wheel thread does not wait for it.
+        bookingService.releaseHold(hold.id, hold.tripId, hold.tickets).whenComplete((released, error) -> {
+            if (error != null) {
+                LOGGER.error("Service: Error releasing expired hold with ID: {}, leaving it to the sweep, error: {}", hold.id, error.getMessage());
+            } else if (released) {
+                notifyExpired(hold.tripId);
+            }
+        });
+    }
+
+    // Holds expired by more than a sweep interval were not expired by their process, which would have done so on time.
+    private void sweep() {
+        if (!running) {
+            return;
+        }
+        bookingService.releaseExpiredHolds(System.currentTimeMillis() - sweepMillis).whenComplete((tripIds, error) -> {
+            if (error != null) {
+                LOGGER.error("Service: Error sweeping expired holds, error: {}", error.getMessage());
+            } else {
+                tripIds.forEach(this::notifyExpired);
+            }
+            wheel.schedule(sweepMillis, this::sweep);
+        });
+    }
+
+    private void notifyExpired(int tripId) {
+        for (IntConsumer listener : expiryListeners) {
+            listener.accept(tripId);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        wheel.close();
+    }
+}
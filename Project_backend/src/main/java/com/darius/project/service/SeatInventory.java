@@ -0,0 +1,97 @@
+package com.darius.project.service;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * In-memory available-seat counters, one per trip, loaded from the database on first use. Seats are taken and
+ * returned with compare-and-set, so concurrent bookings of the same trip never drive a counter below zero and
+ * never wait on each other or on the database to decide. Seats taken but not yet settled (written, or known not to
+ * be) are tracked apart from the counter, so a counter can be dropped and reloaded at any time: the reload subtracts
+ * them from the stored count, which does not include them yet.
+ */
+public class SeatInventory {
+    public enum Outcome { RESERVED, SOLD_OUT, UNKNOWN_TRIP }
+
+    private final ConcurrentHashMap<Integer, AtomicInteger> seats = new ConcurrentHashMap<>();
+    // Seats taken per trip whose write has not settled yet; outlives the counter it was taken from.
+    private final ConcurrentHashMap<Integer, AtomicInteger> unsettled = new ConcurrentHashMap<>();
+    // Current seat count from the database, or null when the trip does not exist.
+    private final Function<Integer, Integer> loader;
+
+    public SeatInventory(Function<Integer, Integer> loader) {
+        this.loader = loader;
+    }
+
+    public Outcome tryReserve(int tripId, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Ticket count must be positive: " + count);
+        }
+        AtomicInteger available = counter(tripId);
+        if (available == null) {
+            return Outcome.UNKNOWN_TRIP;
+        }
+        while (true) {
+            int current = available.get();
+            if (current < count) {
+                return Outcome.SOLD_OUT;
+            }
+            if (available.compareAndSet(current, current - count)) {
+                unsettled(tripId).addAndGet(count);
+                return Outcome.RESERVED;
+            }
+        }
+    }
+
+    /** Seats taken with {@link #tryReserve} are now in the stored count. */
+    public void settle(int tripId, int count) {
+        unsettled(tripId).addAndGet(-count);
+    }
+
+    /** Hands back seats taken with {@link #tryReserve} that were never written. */
+    public void release(int tripId, int count) {
+        settle(tripId, count);
+        free(tripId, count);
+    }
+
+    /** Adds seats the stored count already gained, e.g. from a committed cancellation. */
+    public void free(int tripId, int count) {
+        AtomicInteger available = seats.get(tripId);
+        if (available != null) {
+            available.addAndGet(count);
+        }
+    }
+
+    /** Current count, or -1 when the trip does not exist. */
+    public int available(int tripId) {
+        AtomicInteger available = counter(tripId);
+        return available == null ? -1 : available.get();
+    }
+
+    /** Drops the counter so the next use reloads it; call after the trip's seats are written directly. */
+    public void invalidate(int tripId) {
+        seats.remove(tripId);
+    }
+
+    /** Drops every counter; call after many trips were written at once. Returns the trips that had one. */
+    public Set<Integer> invalidateAll() {
+        Set<Integer> tripIds = new HashSet<>(seats.keySet());
+        seats.keySet().removeAll(tripIds);
+        return tripIds;
+    }
+
+    private AtomicInteger counter(int tripId) {
+        return seats.computeIfAbsent(tripId, id -> {
+            Integer stored = loader.apply(id);
+            // A write that commits while this loads but settles after it leaves the counter off by its seats; its
+            // commit moves the data version, so the watcher has the counter reloaded again (see TripService#reloadSeats).
+            return stored == null ? null : new AtomicInteger(stored - unsettled(id).get());
+        });
+    }
+
+    private AtomicInteger unsettled(int tripId) {
+        return unsettled.computeIfAbsent(tripId, id -> new AtomicInteger());
+    }
+}
@@ -0,0 +1,103 @@
+package com.darius.project.service;
+
+import com.darius.project.repository.Database.*;
+import com.darius.project.repository.ORM.*;
+import org.slf4j.*;
+
+/**
+ * Builds the repositories and services once per process so every socket client and REST request shares them.
+ * The services are stateless; the Hibernate repository opens a session per call and each JDBC repository
+ * keeps one SQLite connection that the driver serializes access to, so none of them rely on
+ * per-connection transaction state.
+ */
+public class ServiceContainer implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceContainer.class);
+
+    private final UserDB userDB;
+    private final ReservationDB reservationDB;
+    private final CustomerDB customerDB;
+    private final IdSequenceDB idSequenceDB;
+    private final DataVersionDB dataVersionDB;
+    private final DataVersion dataVersion;
+    private final ReservationJournal reservationJournal;
+    private final GroupCommitWriter groupCommitWriter;
+    private final TripService tripService;
+    private final UserService userService;
+    private final ReservationService reservationService;
+    private final CustomerService customerService;
+    private final BookingService bookingService;
+    private final SeatHoldService seatHoldService;
+    private final WaitlistService waitlistService;
+    private final AdmissionControl admissionControl;
+    private final DbExecutor dbExecutor;
+
+    /** {@code name} tells processes sharing the database apart, e.g. in the reservation journal. */
+    public ServiceContainer(String name) {
+        LOGGER.info("Creating shared services for {}", name);
+        this.userDB = new UserDB();
+        this.reservationDB = new ReservationDB();
+        this.customerDB = new CustomerDB();
+        this.dataVersion = new DataVersion();
+        this.tripService = new TripService(new HibernateTripRepository(HibernateUtil.getSessionFactory()), dataVersion);
+        // After Hibernate, which creates the trips table if needed: the version triggers are put on it.
+        this.dataVersionDB = new DataVersionDB();
+        // Seats freed by another process sharing the database would otherwise stay taken in this one's counters.
+        dataVersion.addWatchListener(tripService::reloadSeats);
+        dataVersion.watch(dataVersionDB::dataVersion, Config.getIntProperty("data.version.poll.ms", 250));
+        this.userService = new UserService(userDB, dataVersion);
+        this.reservationService = new ReservationService(reservationDB, dataVersion);
+        this.customerService = new CustomerService(customerDB);
+        this.idSequenceDB = new IdSequenceDB();
+        this.reservationJournal = new ReservationJournal(name);
+        this.groupCommitWriter = new GroupCommitWriter(reservationJournal);
+        int idBlockSize = Config.getIntProperty("id.block.size", 50);
+        this.bookingService = new BookingService(tripService, reservationService, customerService,
+                new BookingDB(groupCommitWriter, reservationJournal),
+                new IdGenerator(idSequenceDB, "reservations", "reservations", idBlockSize),
+                new IdGenerator(idSequenceDB, "customers", "customers", idBlockSize));
+        this.seatHoldService = new SeatHoldService(tripService, bookingService,
+                new TimerWheel("hold-expiry", Config.getIntProperty("hold.wheel.tick.ms", 100)),
+                Config.getIntProperty("hold.ttl.ms", 600000), Config.getIntProperty("hold.sweep.ms", 60000));
+        this.waitlistService = new WaitlistService(tripService, bookingService);
+        waitlistService.start();
+        this.admissionControl = new AdmissionControl(Config.getIntProperty("admission.max.concurrent", 32),
+                Config.getIntProperty("admission.max.queued", 64), Config.getIntProperty("admission.max.wait.ms", 500));
+        this.dbExecutor = new DbExecutor(Config.getIntProperty("db.executor.threads", 8),
+                Config.getIntProperty("db.executor.queue", 256), Config.getIntProperty("db.executor.timeout.ms", 10000));
+        seatHoldService.start();
+        for (String tripId : Config.getProperty("flash.trips", "").split(",")) {
+            if (!tripId.isBlank()) {
+                bookingService.setFlashMode(Integer.parseInt(tripId.trim()), true);
+            }
+        }
+    }
+
+    public TripService getTripService() { return tripService; }
+    public UserService getUserService() { return userService; }
+    public ReservationService getReservationService() { return reservationService; }
+    public CustomerService getCustomerService() { return customerService; }
+    public BookingService getBookingService() { return bookingService; }
+    public SeatHoldService getSeatHoldService() { return seatHoldService; }
+    public WaitlistService getWaitlistService() { return waitlistService; }
+    public AdmissionControl getAdmissionControl() { return admissionControl; }
+    public DataVersion getDataVersion() { return dataVersion; }
+    public DbExecutor getDbExecutor() { return dbExecutor; }
+
+    @Override
+    public void close() {
+        LOGGER.info("Closing shared services");
+        seatHoldService.close();
+        waitlistService.close();
+        dbExecutor.close();
+        bookingService.close();
+        // Flush queued bookings before anything else goes away.
+        groupCommitWriter.close();
+        reservationJournal.close();
+        userDB.closeConnection();
+        reservationDB.closeConnection();
+        customerDB.closeConnection();
+        idSequenceDB.closeConnection();
+        dataVersion.close();
+        dataVersionDB.closeConnection();
+    }
+}
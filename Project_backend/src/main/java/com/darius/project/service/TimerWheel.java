@@ -0,0 +1,141 @@
+package com.darius.project.service;
+import org.slf4j.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Hierarchical timing wheel: four levels of 64 slots, level {@code n} slots spanning {@code 64^n} ticks. Scheduling
+ * and cancelling are O(1) and no thread exists per timeout, so hundreds of thousands of pending timeouts cost one
+ * small object each. Timeouts further out sit in a coarser level and cascade down as their slot comes round.
+ * Tasks run on the wheel's own thread and should be short.
+ */
+public class TimerWheel implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimerWheel.class);
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    public static final class Timeout {
+        private final long deadlineTick;
+        private final Runnable task;
+        private volatile boolean cancelled;
+
+        private Timeout(long deadlineTick, Runnable task) {
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        /** The entry stays in its slot until it comes round and is then dropped. */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long tickNanos;
+    private final long startNanos = System.nanoTime();
+    private final List<List<ArrayDeque<Timeout>>> wheels = new ArrayList<>(LEVELS);
+    // Handed over from scheduling threads; only the wheel thread touches the slots and currentTick.
+    private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final Thread ticker;
+    private volatile boolean running = true;
+    private long currentTick = 0;
+
+    public TimerWheel(String name, long tickMillis) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        for (int level = 0; level < LEVELS; level++) {
+            List<ArrayDeque<Timeout>> slots = new ArrayList<>(SLOTS);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                slots.add(new ArrayDeque<>());
+            }
+            wheels.add(slots);
+        }
+        ticker = new Thread(this::run, name);
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /** Runs {@code task} once, no earlier than {@code delayMillis} from now (rounded up to the next tick). */
+    public Timeout schedule(long delayMillis, Runnable task) {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        long deadlineTick = (System.nanoTime() - startNanos + delayNanos + tickNanos - 1) / tickNanos;
+        if (deadlineTick - currentTick >= 1L << (SLOT_BITS * LEVELS)) {
+            throw new IllegalArgumentException("Delay beyond the wheel's range: " + delayMillis + " ms");
+        }
+        Timeout timeout = new Timeout(deadlineTick, task);
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (running) {
+            long sleepNanos = startNanos + (currentTick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            currentTick++;
+            cascade();
+            Timeout timeout;
+            while ((timeout = incoming.poll()) != null) {
+                place(timeout);
+            }
+            ArrayDeque<Timeout> due = wheels.get(0).get((int) (currentTick & (SLOTS - 1)));
+            while ((timeout = due.poll()) != null) {
+                fire(timeout);
+            }
+        }
+    }
+
+    /** Moves the slots whose span starts at this tick one level down, highest level first. */
+    private void cascade() {
+        int top = 0;
+        while (top + 1 < LEVELS && (currentTick & ((1L << (SLOT_BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level >= 1; level--) {
+            ArrayDeque<Timeout> slot = wheels.get(level).get((int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1)));
+            Timeout timeout;
+            while ((timeout = slot.poll()) != null) {
+                place(timeout);
+            }
+        }
+    }
+
+    private void place(Timeout timeout) {
+        if (timeout.cancelled) {
+            return;
+        }
+        long delta = timeout.deadlineTick - currentTick;
+        if (delta < 0) {
+            fire(timeout);
+            return;
+        }
+        int level = 0;
+        while (level + 1 < LEVELS && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        wheels.get(level).get((int) ((timeout.deadlineTick >>> (SLOT_BITS * level)) & (SLOTS - 1))).add(timeout);
+    }
+
+    private void fire(Timeout timeout) {
+        if (timeout.cancelled) {
+            return;
+        }
+        try {
+            timeout.task.run();
+        } catch (RuntimeException e) {
+            LOGGER.error("Error running timer task, error: {}", e.getMessage(), e);
+        }
+    }
+
+    /** Stops the wheel; pending timeouts never fire. */
+    @Override
+    public void close() {
+        running = false;
+        ticker.interrupt();
+    }
+}
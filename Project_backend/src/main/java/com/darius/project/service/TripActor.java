@@ -0,0 +1,178 @@
+package com.darius.project.service;
+import com.darius.project.domain.*;
+import org.slf4j.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The single writer of one trip in flash-sale mode. Bookings and cancellations of the trip queue in a bounded
+ * mailbox and are handled in arrival order by one thread, so the trip's seat counter is never contended. Bookings
+ * taken together are written as one batch: one seat update and one journal append for up to {@code maxBatch}
+ * reservations. When the mailbox is full the trip is refusing work, and other trips are not slowed down by it.
+ */
+class TripActor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TripActor.class);
+    private static final long POLL_MILLIS = 100;
+
+    private interface Command { }
+
+    private static final class Book implements Command {
+        private final BookingService.PendingBooking booking;
+        private final CompletableFuture<Reservation> result = new CompletableFuture<>();
+
+        private Book(BookingService.PendingBooking booking) {
+            this.booking = booking;
+        }
+    }
+
+    private static final class Cancel implements Command {
+        private final Reservation reservation;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Cancel(Reservation reservation) {
+            this.reservation = reservation;
+        }
+    }
+
+    private final int tripId;
+    private final BookingService bookingService;
+    private final TripService tripService;
+    private final int maxBatch;
+    private final BlockingQueue<Command> mailbox;
+    private final Thread thread;
+    private boolean closed;
+
+    TripActor(int tripId, BookingService bookingService, TripService tripService, int mailboxCapacity, int maxBatch) {
+        this.tripId = tripId;
+        this.bookingService = bookingService;
+        this.tripService = tripService;
+        this.maxBatch = maxBatch;
+        this.mailbox = new ArrayBlockingQueue<>(mailboxCapacity);
+        this.thread = new Thread(this::run, "trip-actor-" + tripId);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a booking; null once the actor is closed. Throws RejectedExecutionException when the mailbox is full.
+     */
+    CompletableFuture<Reservation> book(String customerName, String phone, int tickets) {
+        Book book = new Book(new BookingService.PendingBooking(customerName, phone, tickets));
+        return offer(book) ? book.result : null;
+    }
+
+    /** As {@link #book}, for a cancellation of one of the trip's reservations. */
+    CompletableFuture<Boolean> cancel(Reservation reservation) {
+        Cancel cancel = new Cancel(reservation);
+        return offer(cancel) ? cancel.result : null;
+    }
+
+    private synchronized boolean offer(Command command) {
+        if (closed) {
+            return false;
+        }
+        if (!mailbox.offer(command)) {
+            LOGGER.warn("Mailbox of trip with ID: {} is full, rejecting", tripId);
+            throw new RejectedExecutionException("Trip is busy, try again");
+        }
+        return true;
+    }
+
+    /** Stops taking commands; those already queued are still handled. */
+    synchronized void close() {
+        closed = true;
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    void awaitTermination() {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        LOGGER.info("Flash-sale actor started for trip with ID: {}", tripId);
+        List<Command> commands = new ArrayList<>(maxBatch);
+        List<Book> pending = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                Command first = mailbox.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (isClosed() && mailbox.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+                commands.add(first);
+                mailbox.drainTo(commands, maxBatch - 1);
+                for (Command command : commands) {
+                    if (command instanceof Book book) {
+                        take(book, pending);
+                    } else {
+                        // Keep the writer seeing the trip's commands in order.
+                        flush(pending);
+                        cancel((Cancel) command);
+                    }
+                }
+                flush(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                LOGGER.error("Error in flash-sale actor for trip with ID: {}, error: {}", tripId, e.getMessage(), e);
+            } finally {
+                commands.clear();
+            }
+        }
+        LOGGER.info("Flash-sale actor stopped for trip with ID: {}", tripId);
+    }
+
+    private void take(Book book, List<Book> pending) {
+        switch (tripService.takeSeats(tripId, book.booking.tickets)) {
+            case UNKNOWN_TRIP -> book.result.completeExceptionally(new IllegalArgumentException("Trip not found"));
+            case SOLD_OUT -> book.result.completeExceptionally(new IllegalStateException("Not enough seats available"));
+            case RESERVED -> pending.add(book);
+        }
+    }
+
+    private void flush(List<Book> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Book> batch = List.copyOf(pending);
+        pending.clear();
+        LOGGER.info("Queueing {} bookings for trip with ID: {}", batch.size(), tripId);
+        try {
+            bookingService.persistAll(tripId, batch.stream().map(book -> book.booking).toList()).whenComplete((reservations, error) -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (error != null) {
+                        batch.get(i).result.completeExceptionally(error);
+                    } else {
+                        batch.get(i).result.complete(reservations.get(i));
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            batch.forEach(book -> book.result.completeExceptionally(e));
+        }
+    }
+
+    private void cancel(Cancel cancel) {
+        try {
+            bookingService.cancelAsync(cancel.reservation).whenComplete((deleted, error) -> {
+                if (error != null) {
+                    cancel.result.completeExceptionally(error);
+                } else {
+                    cancel.result.complete(deleted);
+                }
+            });
+        } catch (RuntimeException e) {
+            cancel.result.completeExceptionally(e);
+        }
+    }
+}
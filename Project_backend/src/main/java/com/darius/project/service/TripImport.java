@@ -0,0 +1,152 @@
+package com.darius.project.service;
+import com.darius.project.domain.Trip;
+import com.darius.project.repository.GenericRepos.TripRepository;
+import org.slf4j.*;
+import java.util.*;
+
+/**
+ * One bulk import of trips, fed row by row while the upload is read (see {@link TripService#startImport}). Valid rows
+ * are buffered and written {@code import.transaction.rows} at a time, each chunk one transaction sent as JDBC batches
+ * of {@code import.batch.rows}; a row with the id of a stored trip replaces it. When a chunk fails, its rows are
+ * retried one by one so the report names the rows at fault. The trip caches are invalidated once, by
+ * {@link #finish}, instead of once per trip. Not thread-safe: one import is fed by one thread.
+ */
+public class TripImport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TripImport.class);
+
+    private final TripService tripService;
+    private final TripRepository tripRepository;
+    private final int batchRows;
+    private final int transactionRows;
+    private final int maxErrors;
+    private final List<Trip> pending = new ArrayList<>();
+    private final List<Long> pendingLines = new ArrayList<>();
+    private final List<RowError> errors = new ArrayList<>();
+    private int imported;
+    private int failed;
+    private boolean finished;
+
+    TripImport(TripService tripService, TripRepository tripRepository, int batchRows, int transactionRows, int maxErrors) {
+        this.tripService = tripService;
+        this.tripRepository = tripRepository;
+        this.batchRows = batchRows;
+        this.transactionRows = transactionRows;
+        this.maxErrors = maxErrors;
+    }
+
+    /** Validates the trip read at {@code line} of the upload and queues it, writing the chunk once it is full. */
+    public void add(long line, Trip trip) {
+        String problem = validate(trip);
+        if (problem != null) {
+            reject(line, problem);
+            return;
+        }
+        pending.add(trip);
+        pendingLines.add(line);
+        if (pending.size() >= transactionRows) {
+            flush();
+        }
+    }
+
+    /** Records a row that could not be read, e.g. malformed JSON or a non-numeric price. */
+    public void reject(long line, String message) {
+        failed++;
+        if (errors.size() < maxErrors) {
+            errors.add(new RowError(line, message));
+        }
+    }
+
+    /**
+     * Writes what is still queued and, if anything was stored, invalidates the caches and tells the listeners (see
+     * {@link TripService#addTripsImportedListener}) once. Call also when the upload broke off: chunks already written
+     * stay written.
+     */
+    public Report finish() {
+        if (!finished) {
+            finished = true;
+            flush();
+            if (imported > 0) {
+                tripService.tripsImported(imported);
+            }
+            LOGGER.info("Service: Imported {} trips, {} rows rejected", imported, failed);
+        }
+        return new Report(imported, failed, errors, failed > errors.size());
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            tripRepository.saveAll(pending, batchRows);
+            imported += pending.size();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Service: Chunk of {} trips failed, retrying its rows one by one: {}", pending.size(), e.getMessage());
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    tripRepository.saveAll(List.of(pending.get(i)), 1);
+                    imported++;
+                } catch (RuntimeException rowError) {
+                    reject(pendingLines.get(i), "Could not be stored: " + rowError.getMessage());
+                }
+            }
+        }
+        pending.clear();
+        pendingLines.clear();
+    }
+
+    private static String validate(Trip trip) {
+        if (trip == null) {
+            return "Empty row";
+        }
+        if (trip.getId() == null || trip.getId() <= 0) {
+            return "id is required and must be positive";
+        }
+        if (trip.getAttractionName() == null || trip.getAttractionName().isBlank()) {
+            return "attractionName is required";
+        }
+        if (trip.getDepartureTime() == null || trip.getDepartureTime().isBlank()) {
+            return "departureTime is required";
+        }
+        if (!(trip.getPrice() >= 0) || Double.isInfinite(trip.getPrice())) {
+            return "price must be a non-negative number";
+        }
+        if (trip.getAvailableSeats() < 0) {
+            return "availableSeats must not be negative";
+        }
+        return null;
+    }
+
+    public static final class RowError {
+        private final long line;
+        private final String message;
+
+        RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() { return line; }
+        public String getMessage() { return message; }
+    }
+
+    /** Outcome of an import; {@code errors} holds the first {@code import.max.errors} rejected rows. */
+    public static final class Report {
+        private final int imported;
+        private final int failed;
+        private final List<RowError> errors;
+        private final boolean errorsTruncated;
+
+        Report(int imported, int failed, List<RowError> errors, boolean errorsTruncated) {
+            this.imported = imported;
+            this.failed = failed;
+            this.errors = errors;
+            this.errorsTruncated = errorsTruncated;
+        }
+
+        public int getImported() { return imported; }
+        public int getFailed() { return failed; }
+        public List<RowError> getErrors() { return errors; }
+        public boolean isErrorsTruncated() { return errorsTruncated; }
+    }
+}
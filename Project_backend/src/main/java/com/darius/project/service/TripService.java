@@ -1,14 +1,42 @@
 package com.darius.project.service;
 import com.darius.project.domain.Trip;
+import com.darius.project.repository.Database.Config;
 import com.darius.project.repository.GenericRepos.TripRepository;
 import org.slf4j.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 public class TripService {
     private static final Logger LOGGER = LoggerFactory.getLogger(TripService.class);
     private final TripRepository tripRepository;
+    // Bumped after every committed write; a snapshot is current only at the version it was read at.
+    private final DataVersion dataVersion;
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private volatile TripSnapshot snapshot;
+    // Bounds staleness from writers outside this process, e.g. the REST API and the socket server sharing the database.
+    private final long snapshotMaxAgeNanos;
+    private final int exportChunkRows;
+    // Decides bookings in memory; the booking's transaction then adjusts the database by the same relative amount.
+    private final SeatInventory seatInventory;
+    // Told the trip id whenever seats go back to the counter, e.g. so a waitlist can take them.
+    private final List<IntConsumer> seatsReleasedListeners = new CopyOnWriteArrayList<>();
+    // Told the number of trips stored by a bulk import, once per import.
+    private final List<IntConsumer> tripsImportedListeners = new CopyOnWriteArrayList<>();
 
-    public TripService(TripRepository tripRepository) { this.tripRepository = tripRepository; }
+    public TripService(TripRepository tripRepository, DataVersion dataVersion) {
+        this.tripRepository = tripRepository;
+        this.dataVersion = dataVersion;
+        this.snapshotMaxAgeNanos = TimeUnit.MILLISECONDS.toNanos(Config.getIntProperty("trip.snapshot.max.age.ms", 2000));
+        this.exportChunkRows = Math.max(1, Config.getIntProperty("export.chunk.rows", 1000));
+        this.seatInventory = new SeatInventory(id -> {
+            Trip trip = tripRepository.findById(id);
+            // Held seats are already taken from the stored count (see SeatHoldService), so the snapshot agrees with it.
+            return trip == null ? null : trip.getAvailableSeats();
+        });
+    }
 
     public List<Trip> findByAttractionAndTime(String attraction, String startTime, String endTime) {
         LOGGER.info("Service: Finding trips by attraction: '{}' between {} and {}", attraction, startTime, endTime);
@@ -41,6 +69,47 @@ public class TripService {
         return trip;
     }
 
+    /** One page of trips; see {@link TripRepository#findPage}. */
+    public List<Trip> findPage(TripRepository.Order order, String afterKey, Integer afterId, int limit) {
+        LOGGER.info("Service: Finding {} trips by {} after ID: {}", limit, order, afterId);
+        return tripRepository.findPage(order, afterKey, afterId, limit);
+    }
+
+    /**
+     * Hands every trip to {@code chunkConsumer} in ID order, {@code export.chunk.rows} at a time, reading them as ID pages
+     * (see {@link #findPage}). Unlike {@link #findAll} the whole table is never in memory at once, and no read is left
+     * open between chunks to hold off bookings. Returns the count.
+     */
+    public int exportAll(Consumer<List<Trip>> chunkConsumer) {
+        LOGGER.info("Service: Exporting all trips");
+        int count = 0;
+        Integer afterId = null;
+        while (true) {
+            List<Trip> chunk = tripRepository.findPage(TripRepository.Order.ID, null, afterId, exportChunkRows);
+            if (!chunk.isEmpty()) {
+                chunkConsumer.accept(chunk);
+                count += chunk.size();
+            }
+            if (chunk.size() < exportChunkRows) {
+                break;
+            }
+            afterId = chunk.get(chunk.size() - 1).getId();
+        }
+        LOGGER.info("Service: Exported {} trips", count);
+        return count;
+    }
+
+    /** The trips with the given ids in one lookup, by id; missing ids are absent from the map. */
+    public Map<Integer, Trip> findAllById(Collection<Integer> ids) {
+        LOGGER.info("Service: Finding {} trips by ID", ids.size());
+
+        Map<Integer, Trip> trips = new HashMap<>();
+        for (Trip trip : tripRepository.findAllById(ids)) {
+            trips.put(trip.getId(), trip);
+        }
+        return trips;
+    }
+
     public List<Trip> findAll() {
         LOGGER.info("Service: Retrieving all trips");
 
@@ -57,6 +126,136 @@ public class TripService {
         return trips;
     }
 
+    /**
+     * Returns the whole catalog, scanning the repository only when a write has happened since the last scan.
+     * Concurrent callers that find the snapshot out of date wait for a single rebuild instead of each running one.
+     */
+    public TripSnapshot getSnapshot() {
+        TripSnapshot current = snapshot;
+        if (isCurrent(current)) {
+            return current;
+        }
+        snapshotLock.lock();
+        try {
+            current = snapshot;
+            if (isCurrent(current)) {
+                return current;
+            }
+            // Read the version first: a write committed during the scan then leaves this snapshot already outdated.
+            long version = dataVersion.get();
+            current = new TripSnapshot(version, findAll());
+            snapshot = current;
+            LOGGER.info("Service: Built trip snapshot at version {} with {} trips", version, current.getTrips().size());
+            return current;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private boolean isCurrent(TripSnapshot candidate) {
+        return candidate != null
+                && candidate.getVersion() == dataVersion.get()
+                && System.nanoTime() - candidate.getBuiltAtNanos() < snapshotMaxAgeNanos;
+    }
+
+    /**
+     * Takes {@code count} seats of a trip from the in-memory counter, which decides alone, so concurrent callers cannot
+     * oversell. The caller persists the change (see {@link BookingService}) and then reports it through
+     * {@link #seatsWritten} or {@link #seatsRanOut}, or hands the seats back with {@link #returnSeats} if it never got
+     * written.
+     */
+    public SeatInventory.Outcome takeSeats(Integer tripId, int count) {
+        LOGGER.info("Service: Taking {} seats on trip with ID: {}", count, tripId);
+
+        SeatInventory.Outcome outcome = seatInventory.tryReserve(tripId, count);
+        if (outcome != SeatInventory.Outcome.RESERVED) {
+            LOGGER.info("Service: Could not take {} seats on trip with ID: {}: {}", count, tripId, outcome);
+        }
+        return outcome;
+    }
+
+    /** Hands back seats taken with {@link #takeSeats} that were never written. */
+    public void returnSeats(Integer tripId, int count) {
+        LOGGER.info("Service: Returning {} seats on trip with ID: {}", count, tripId);
+        seatInventory.release(tripId, count);
+        notifySeatsReleased(tripId);
+    }
+
+    /** Records that the stored seats of a trip went up by {@code count} in a committed write, e.g. a cancellation. */
+    public void seatsFreed(Integer tripId, int count) {
+        LOGGER.info("Service: Freeing {} seats on trip with ID: {}", count, tripId);
+        dataVersion.bump();
+        seatInventory.free(tripId, count);
+        notifySeatsReleased(tripId);
+    }
+
+    public void addSeatsReleasedListener(IntConsumer listener) {
+        seatsReleasedListeners.add(listener);
+    }
+
+    private void notifySeatsReleased(Integer tripId) {
+        for (IntConsumer listener : seatsReleasedListeners) {
+            listener.accept(tripId);
+        }
+    }
+
+    /** Records that {@code count} seats taken with {@link #takeSeats} were written. */
+    public void seatsWritten(Integer tripId, int count) {
+        dataVersion.bump();
+        seatInventory.settle(tripId, count);
+    }
+
+    /** Records a committed write of the trip's bookings that left its stored seats alone. */
+    public void seatsChanged(Integer tripId) {
+        dataVersion.bump();
+    }
+
+    /**
+     * Records that seats taken with {@link #takeSeats} could not be written because the database had fewer left than
+     * the counter (e.g. another process booked them); the counter is dropped and reloaded on next use.
+     */
+    public void seatsRanOut(Integer tripId, int count) {
+        LOGGER.warn("Service: Stored seats of trip with ID: {} disagree with the inventory, reloading", tripId);
+        seatInventory.settle(tripId, count);
+        seatInventory.invalidate(tripId);
+    }
+
+    /**
+     * Drops every seat counter so each is reloaded on next use, and lets the waitlists of those trips look at the new
+     * counts. Call when the database may have been written by another process sharing it, which the counters of this
+     * one never see otherwise: seats it freed would stay taken here.
+     */
+    public void reloadSeats() {
+        Set<Integer> tripIds = seatInventory.invalidateAll();
+        LOGGER.debug("Service: Reloading the seat counters of {} trips", tripIds.size());
+        tripIds.forEach(this::notifySeatsReleased);
+    }
+
+    /** Available seats as the inventory sees them, including bookings whose events are not yet published. */
+    public int availableSeats(Integer tripId) {
+        return seatInventory.available(tripId);
+    }
+
+    /** A bulk import of trips, fed row by row; see {@link TripImport}. */
+    public TripImport startImport() {
+        LOGGER.info("Service: Starting trip import");
+        return new TripImport(this, tripRepository, Math.max(1, Config.getIntProperty("import.batch.rows", 500)),
+                Math.max(1, Config.getIntProperty("import.transaction.rows", 5000)), Config.getIntProperty("import.max.errors", 1000));
+    }
+
+    public void addTripsImportedListener(IntConsumer listener) {
+        tripsImportedListeners.add(listener);
+    }
+
+    // Called once an import has stored its trips: any of the stored seat counts may have changed.
+    void tripsImported(int count) {
+        dataVersion.bump();
+        seatInventory.invalidateAll();
+        for (IntConsumer listener : tripsImportedListeners) {
+            listener.accept(count);
+        }
+    }
+
     public void save(Integer id, Trip trip) {
         if (trip == null) {
             LOGGER.error("Service: Cannot save null trip");
@@ -66,6 +265,8 @@ public class TripService {
 
         try {
             tripRepository.save(id, trip);
+            dataVersion.bump();
+            seatInventory.invalidate(id);
             LOGGER.info("Service: Successfully saved trip with ID: {}", id);
         } catch (Exception e) {
             LOGGER.error("Service: Error saving trip with ID: {}, attraction: {}, error: {}",
@@ -91,6 +292,10 @@ public class TripService {
             }
 
             tripRepository.update(id, trip);
+            dataVersion.bump();
+            seatInventory.invalidate(id);
+            // The new count may leave room for waiting customers.
+            notifySeatsReleased(id);
             LOGGER.info("Service: Successfully updated trip with ID: {}", id);
         } catch (Exception e) {
             LOGGER.error("Service: Error updating trip with ID: {}, attraction: {}, error: {}",
@@ -109,6 +314,8 @@ public class TripService {
             }
 
             tripRepository.delete(id);
+            dataVersion.bump();
+            seatInventory.invalidate(id);
             LOGGER.info("Service: Successfully deleted trip with ID: {}", id);
         } catch (Exception e) {
             LOGGER.error("Service: Error deleting trip with ID: {}, error: {}", id, e.getMessage(), e);
@@ -0,0 +1,35 @@
+package com.darius.project.service;
+import com.darius.project.domain.Trip;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Immutable view of the whole trip catalog at one {@link TripService} data version.
+ * Each transport keeps its serialized form here under its own key, so the catalog is encoded once per change
+ * and every later reader gets the same bytes. Encodings must not be modified by callers.
+ */
+public final class TripSnapshot {
+    private final long version;
+    private final long builtAtNanos;
+    private final List<Trip> trips;
+    private final Map<String, Object> encodings = new ConcurrentHashMap<>();
+
+    TripSnapshot(long version, List<Trip> trips) {
+        this.version = version;
+        this.builtAtNanos = System.nanoTime();
+        this.trips = Collections.unmodifiableList(trips);
+    }
+
+    public long getVersion() { return version; }
+
+    public List<Trip> getTrips() { return trips; }
+
+    long getBuiltAtNanos() { return builtAtNanos; }
+
+    /** Returns the encoding stored under {@code key}, computing it on first use. */
+    @SuppressWarnings("unchecked")
+    public <T> T encoded(String key, Function<List<Trip>, T> encoder) {
+        return (T) encodings.computeIfAbsent(key, ignored -> encoder.apply(trips));
+    }
+}
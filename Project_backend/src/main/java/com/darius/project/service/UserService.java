@@ -10,8 +10,14 @@ import java.util.*;
 public class UserService {
     private static final Logger LOGGER = LoggerFactory.getLogger(UserService.class);
     private final UserRepository userRepository;
+    private final DataVersion dataVersion;
 
-    public UserService(UserRepository userRepository) { this.userRepository = userRepository; }
+    public UserService(UserRepository userRepository) { this(userRepository, new DataVersion()); }
+
+    public UserService(UserRepository userRepository, DataVersion dataVersion) {
+        this.userRepository = userRepository;
+        this.dataVersion = dataVersion;
+    }
 
     public User findByUsername(String username) {
         LOGGER.info("Service: Finding user by username: {}", username);
@@ -72,6 +78,7 @@ public class UserService {
             }
 
             userRepository.save(id, user);
+            dataVersion.bump();
             LOGGER.info("Service: Successfully saved user with ID: {}", id);
         } catch (Exception e) {
             LOGGER.error("Service: Error saving user with ID: {}, username: {}, error: {}",
@@ -107,6 +114,7 @@ public class UserService {
             }
 
             userRepository.update(id, user);
+            dataVersion.bump();
             LOGGER.info("Service: Successfully updated user with ID: {}", id);
         } catch (Exception e) {
             LOGGER.error("Service: Error updating user with ID: {}, username: {}, error: {}",
@@ -127,6 +135,7 @@ public class UserService {
             }
 
             userRepository.delete(id);
+            dataVersion.bump();
             LOGGER.info("Service: Successfully deleted user with ID: {}", id);
         } catch (Exception e) {
             LOGGER.error("Service: Error deleting user with ID: {}, error: {}", id, e.getMessage(), e);
@@ -148,4 +157,17 @@ public class UserService {
         LOGGER.info("Service: Retrieved {} users total", count);
         return users;
     }
-}
\ No newline at end of file
+
+    public List<User> findPage(Integer afterId, int limit) {
+        LOGGER.info("Service: Finding {} users after ID: {}", limit, afterId);
+        return userRepository.findPage(afterId, limit);
+    }
+
+    public List<User> findAllByUsernameContaining(String partialUsername) {
+        LOGGER.info("Service: Finding users with username containing: '{}'", partialUsername);
+
+        List<User> users = userRepository.findAllByUsernameContaining(partialUsername);
+        LOGGER.info("Service: Found {} users with username containing: '{}'", users.size(), partialUsername);
+        return users;
+    }
+}
@@ -0,0 +1,214 @@
+package com.darius.project.service;
+import com.darius.project.domain.*;
+import org.slf4j.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Per-trip FIFO waitlists. Whenever seats of a trip come free (a cancellation, a failed booking, an expired or
+ * released hold) the waitlist promotes, oldest first, every entry whose tickets fit into the free seats. Each trip's
+ * entries are queued by ticket count, so finding the oldest entry that fits looks only at the head of each queue
+ * and costs the same for ten entries as for tens of thousands. Promotions run on one thread, one trip at a time.
+ */
+public class WaitlistService implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WaitlistService.class);
+
+    public static final class Entry {
+        private final long id;
+        private final int tripId;
+        private final String customerName;
+        private final String phone;
+        private final int tickets;
+        private volatile boolean left;
+
+        private Entry(long id, int tripId, String customerName, String phone, int tickets) {
+            this.id = id;
+            this.tripId = tripId;
+            this.customerName = customerName;
+            this.phone = phone;
+            this.tickets = tickets;
+        }
+
+        public long getId() { return id; }
+        public int getTripId() { return tripId; }
+        public String getCustomerName() { return customerName; }
+        public String getPhone() { return phone; }
+        public int getTickets() { return tickets; }
+    }
+
+    /** One trip's entries, a FIFO queue per ticket count. Ids grow with arrival, so the smallest head is the oldest. */
+    private static final class TripWaitlist {
+        private final TreeMap<Integer, ArrayDeque<Entry>> byTickets = new TreeMap<>();
+        private int size;
+
+        private synchronized void add(Entry entry) {
+            byTickets.computeIfAbsent(entry.tickets, tickets -> new ArrayDeque<>()).add(entry);
+            size++;
+        }
+
+        /** The oldest waiting entry needing at most {@code available} seats, or null. */
+        private synchronized Entry oldestFitting(int available) {
+            Entry oldest = null;
+            Iterator<ArrayDeque<Entry>> queues = byTickets.headMap(available, true).values().iterator();
+            while (queues.hasNext()) {
+                ArrayDeque<Entry> queue = queues.next();
+                while (!queue.isEmpty() && queue.peek().left) {
+                    queue.poll();
+                }
+                if (queue.isEmpty()) {
+                    queues.remove();
+                } else if (oldest == null || queue.peek().id < oldest.id) {
+                    oldest = queue.peek();
+                }
+            }
+            return oldest;
+        }
+
+        /** Puts an entry taken off by a promotion that failed back where it was: it was the head of its queue. */
+        private synchronized void restore(Entry entry) {
+            byTickets.computeIfAbsent(entry.tickets, tickets -> new ArrayDeque<>()).addFirst(entry);
+            entry.left = false;
+            size++;
+        }
+
+        private synchronized void remove(Entry entry) {
+            ArrayDeque<Entry> queue = byTickets.get(entry.tickets);
+            if (queue != null && queue.peek() == entry) {
+                queue.poll();
+            }
+            // Entries leaving from the middle are skipped when they reach the head.
+            entry.left = true;
+            size--;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+    }
+
+    private final TripService tripService;
+    private final BookingService bookingService;
+    private final AtomicLong ids = new AtomicLong();
+    private final ConcurrentHashMap<Integer, TripWaitlist> waitlists = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final ExecutorService promoter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "waitlist-promoter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Told about each promoted entry once its reservation is committed.
+    private final List<BiConsumer<Entry, Reservation>> promotionListeners = new CopyOnWriteArrayList<>();
+
+    public WaitlistService(TripService tripService, BookingService bookingService) {
+        this.tripService = tripService;
+        this.bookingService = bookingService;
+    }
+
+    /** Starts promoting whenever seats of a trip come free. */
+    public void start() {
+        tripService.addSeatsReleasedListener(this::promote);
+    }
+
+    public void addPromotionListener(BiConsumer<Entry, Reservation> listener) {
+        promotionListeners.add(listener);
+    }
+
+    /**
+     * Puts the customer on the trip's waitlist. If seats are free the entry is promoted straight away.
+     * Throws IllegalArgumentException for an unknown trip or a ticket count below one.
+     */
+    public Entry join(String customerName, String phone, Integer tripId, int tickets) {
+        LOGGER.info("Service: Adding customer: {} to the waitlist of trip with ID: {} for {} tickets", customerName, tripId, tickets);
+
+        if (tickets <= 0) {
+            throw new IllegalArgumentException("Ticket count must be positive");
+        }
+        if (tripService.availableSeats(tripId) < 0) {
+            throw new IllegalArgumentException("Trip not found");
+        }
+        Entry entry = new Entry(ids.incrementAndGet(), tripId, customerName, phone, tickets);
+        entries.put(entry.id, entry);
+        waitlists.computeIfAbsent(tripId, id -> new TripWaitlist()).add(entry);
+        promote(tripId);
+        return entry;
+    }
+
+    /** Takes the entry off its waitlist; null when it is unknown or was already promoted. */
+    public Entry leave(long entryId) {
+        LOGGER.info("Service: Removing waitlist entry with ID: {}", entryId);
+
+        Entry entry = entries.remove(entryId);
+        if (entry != null) {
+            waitlists.get(entry.tripId).remove(entry);
+        }
+        return entry;
+    }
+
+    public int waiting(Integer tripId) {
+        TripWaitlist waitlist = waitlists.get(tripId);
+        return waitlist == null ? 0 : waitlist.size();
+    }
+
+    /** Queues a promotion pass for the trip; cheap enough to call whenever seats may have come free. */
+    public void promote(int tripId) {
+        if (waitlists.containsKey(tripId)) {
+            promoter.execute(() -> promoteNow(tripId));
+        }
+    }
+
+    private void promoteNow(int tripId) {
+        TripWaitlist waitlist = waitlists.get(tripId);
+        while (true) {
+            Entry entry = waitlist.oldestFitting(tripService.availableSeats(tripId));
+            if (entry == null) {
+                return;
+            }
+            // The seats are taken and the entry leaves in one step; a direct booking racing for them simply wins.
+            if (tripService.takeSeats(tripId, entry.tickets) != SeatInventory.Outcome.RESERVED) {
+                continue;
+            }
+            if (entries.remove(entry.id) == null) {
+                // It left the waitlist meanwhile.
+                tripService.returnSeats(tripId, entry.tickets);
+                continue;
+            }
+            waitlist.remove(entry);
+            LOGGER.info("Service: Promoting waitlist entry with ID: {} on trip with ID: {}", entry.id, tripId);
+            try {
+                bookingService.persist(entry.customerName, entry.phone, tripId, entry.tickets).whenComplete((reservation, error) -> {
+                    if (error != null) {
+                        LOGGER.error("Service: Error booking promoted waitlist entry with ID: {}, error: {}", entry.id, error.getMessage(), error);
+                        restoreLater(entry);
+                        return;
+                    }
+                    for (BiConsumer<Entry, Reservation> listener : promotionListeners) {
+                        listener.accept(entry, reservation);
+                    }
+                });
+            } catch (RuntimeException e) {
+                LOGGER.error("Service: Error booking promoted waitlist entry with ID: {}, error: {}", entry.id, e.getMessage(), e);
+                restoreLater(entry);
+            }
+        }
+    }
+
+    /**
+     * Puts back an entry whose booking failed; persist has already returned its seats. It is queued behind the pass
+     * that returning the seats triggered, so the entry waits for the next seats to come free instead of failing again
+     * in a loop.
+     */
+    private void restoreLater(Entry entry) {
+        promoter.execute(() -> {
+            LOGGER.info("Service: Putting waitlist entry with ID: {} back on the waitlist of trip with ID: {}", entry.id, entry.tripId);
+            entries.put(entry.id, entry);
+            waitlists.get(entry.tripId).restore(entry);
+        });
+    }
+
+    @Override
+    public void close() {
+        promoter.shutdown();
+    }
+}
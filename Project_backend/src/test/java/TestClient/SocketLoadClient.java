@@ -0,0 +1,145 @@
+package TestClient;
+import com.darius.project.networking.BinaryProtocol;
+import com.darius.project.networking.LineReader;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens many socket connections at once and has each one issue GET_TRIPS in a loop.
+ * Run it once per server.io.mode (blocking, virtual, nio) against the same database to compare:
+ *
+ *   java TestClient.SocketLoadClient [connections] [requestsPerConnection] [host] [port] [text|binary]
+ *
+ * With the pooled mode every connection past server.worker.threads waits for a free thread and
+ * shows up as a timeout here. Pass "binary" to negotiate {@link BinaryProtocol} and compare reply sizes.
+ */
+public class SocketLoadClient {
+    private static final int TIMEOUT_MS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String host = args.length > 2 ? args[2] : "localhost";
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 5556;
+        boolean binary = args.length > 4 && args[4].equalsIgnoreCase("binary");
+
+        System.out.println("==== " + connections + " connections x " + requests + " GET_TRIPS (" + (binary ? "binary" : "text") + ") against " + host + ":" + port + " ====");
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        AtomicInteger failedConnections = new AtomicInteger();
+        AtomicInteger timeouts = new AtomicInteger();
+        AtomicLong replyBytes = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(connections);
+
+        long begin;
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < connections; i++) {
+                clients.execute(() -> {
+                    try (Socket socket = new Socket()) {
+                        socket.connect(new InetSocketAddress(host, port), TIMEOUT_MS);
+                        socket.setSoTimeout(TIMEOUT_MS);
+                        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                        LineReader lines = new LineReader(in, 16 * 1024 * 1024);
+                        OutputStream out = socket.getOutputStream();
+                        if (binary) {
+                            negotiateBinary(lines, out);
+                        }
+                        ByteBuffer request = binary
+                                ? BinaryProtocol.encodeCommand(new String[] {"GET_TRIPS"})
+                                : ByteBuffer.wrap("GET_TRIPS\n".getBytes(StandardCharsets.UTF_8));
+                        start.await();
+                        for (int r = 0; r < requests; r++) {
+                            long sent = System.nanoTime();
+                            out.write(request.array());
+                            out.flush();
+                            long size = binary ? awaitTripsFrame(in) : awaitTripsLine(lines);
+                            if (size < 0) {
+                                failedConnections.incrementAndGet();
+                                return;
+                            }
+                            latencies.add(System.nanoTime() - sent);
+                            replyBytes.addAndGet(size);
+                        }
+                    } catch (SocketTimeoutException e) {
+                        timeouts.incrementAndGet();
+                    } catch (Exception e) {
+                        failedConnections.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            begin = System.nanoTime();
+            start.countDown();
+            done.await();
+        }
+        long elapsedMs = (System.nanoTime() - begin) / 1_000_000;
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        System.out.println("Completed requests: " + sorted.size() + " / " + (connections * requests));
+        System.out.println("Failed connections: " + failedConnections.get() + ", timed out: " + timeouts.get());
+        System.out.println("Elapsed: " + elapsedMs + " ms, throughput: " + (elapsedMs == 0 ? 0 : sorted.size() * 1000L / elapsedMs) + " req/s");
+        System.out.println("Average reply size: " + (sorted.isEmpty() ? 0 : replyBytes.get() / sorted.size()) + " bytes");
+        System.out.println("Latency p50: " + percentile(sorted, 50) + " ms, p95: " + percentile(sorted, 95) + " ms, p99: " + percentile(sorted, 99) + " ms");
+    }
+
+    private static void negotiateBinary(LineReader lines, OutputStream out) throws IOException {
+        out.write((BinaryProtocol.SWITCH_COMMAND + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.equals(BinaryProtocol.SWITCH_COMMAND)) {
+                return;
+            }
+        }
+        throw new EOFException("Connection closed during protocol negotiation");
+    }
+
+    /** Returns the reply size in bytes, or -1 if the connection closed; skips broadcasts such as UPDATE_TRIPS. */
+    private static long awaitTripsLine(LineReader lines) throws IOException {
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.startsWith("TRIPS#")) {
+                return line.getBytes(StandardCharsets.UTF_8).length + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static long awaitTripsFrame(DataInputStream in) throws IOException {
+        BinaryProtocol.Frame frame;
+        while ((frame = BinaryProtocol.readFrame(in, 16 * 1024 * 1024)) != null) {
+            if (frame.getOpcode() == BinaryProtocol.OP_TRIPS) {
+                BinaryProtocol.decodeTrips(frame);
+                return frame.getPayload().length + 5;
+            }
+        }
+        return -1;
+    }
+
+    private static long percentile(List<Long> sorted, int p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = Math.min(sorted.size() - 1, (int) Math.ceil(p / 100.0 * sorted.size()) - 1);
+        return sorted.get(Math.max(0, index)) / 1_000_000;
+    }
+}
@@ -11,6 +11,7 @@ const Dashboard = () => {
     const { user } = useAuth();
 
     const [trips, setTrips] = useState([]);
+    const [nextTripsCursor, setNextTripsCursor] = useState(null);
     const [users, setUsers] = useState([]);
     const [loading, setLoading] = useState(false);
     const [error, setError] = useState(null);
@@ -41,8 +42,9 @@ const Dashboard = () => {
     const loadTrips = async () => {
         setLoading(true);
         try {
-            const data = await tripAPI.getAllTrips();
-            setTrips(Array.isArray(data) ? data : []);
+            const page = await tripAPI.getTripsPage();
+            setTrips(Array.isArray(page.items) ? page.items : []);
+            setNextTripsCursor(page.nextCursor);
         } catch (err) {
             showMessage('Failed to load trips. Is the API server running on port 8080?', true);
             console.error('Load trips error:', err);
@@ -51,6 +53,17 @@ const Dashboard = () => {
         }
     };
 
+    const loadMoreTrips = async () => {
+        try {
+            const page = await tripAPI.getTripsPage({ after: nextTripsCursor });
+            setTrips((current) => [...current, ...page.items]);
+            setNextTripsCursor(page.nextCursor);
+        } catch (err) {
+            showMessage('Failed to load more trips.', true);
+            console.error('Load more trips error:', err);
+        }
+    };
+
     const loadUsers = async () => {
         setLoading(true);
         try {
@@ -158,6 +171,7 @@ const Dashboard = () => {
         try {
             const data = await tripAPI.searchByAttraction(searchTerm);
             setTrips(Array.isArray(data) ? data : []);
+            setNextTripsCursor(null);
         } catch (err) {
             showMessage('Search failed.', true);
             console.error('Search error:', err);
@@ -283,6 +297,8 @@ const Dashboard = () => {
                             onMakeReservation={setSelectedTrip}
                             isAdmin={user.isAdmin}
                             loading={loading}
+                            hasMore={nextTripsCursor !== null}
+                            onLoadMore={loadMoreTrips}
                         />
                     </>
                 )}
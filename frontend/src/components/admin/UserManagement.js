@@ -3,6 +3,7 @@ import { userAPI } from '../../services/api';
 
 const UserManagement = () => {
     const [users, setUsers] = useState([]);
+    const [nextCursor, setNextCursor] = useState(null);
     const [showForm, setShowForm] = useState(false);
     const [editingUser, setEditingUser] = useState(null);
     const [loading, setLoading] = useState(false);
@@ -26,8 +27,9 @@ const UserManagement = () => {
     const loadUsers = async () => {
         setLoading(true);
         try {
-            const data = await userAPI.getAllUsers();
-            setUsers(Array.isArray(data) ? data : []);
+            const page = await userAPI.getUsersPage();
+            setUsers(Array.isArray(page.items) ? page.items : []);
+            setNextCursor(page.nextCursor);
         } catch (error) {
             showMessage('Error loading users: ' + error.message, true);
             console.error('Error loading users:', error);
@@ -36,6 +38,16 @@ const UserManagement = () => {
         }
     };
 
+    const loadMoreUsers = async () => {
+        try {
+            const page = await userAPI.getUsersPage({ after: nextCursor });
+            setUsers((current) => [...current, ...page.items]);
+            setNextCursor(page.nextCursor);
+        } catch (error) {
+            showMessage('Error loading users: ' + error.message, true);
+        }
+    };
+
     const handleSearch = async () => {
         if (!searchTerm.trim()) {
             await loadUsers();
@@ -46,6 +58,7 @@ const UserManagement = () => {
         try {
             const data = await userAPI.searchUsers(searchTerm);
             setUsers(Array.isArray(data) ? data : []);
+            setNextCursor(null);
         } catch (error) {
             showMessage('Error searching users: ' + error.message, true);
         } finally {
@@ -326,6 +339,16 @@ const UserManagement = () => {
                         ))}
                         </tbody>
                     </table>
+                    {nextCursor && (
+                        <div className="text-center py-4">
+                            <button
+                                onClick={loadMoreUsers}
+                                className="bg-blue-500 hover:bg-blue-600 text-white py-2 px-6 rounded-lg transition duration-200"
+                            >
+                                Load more users
+                            </button>
+                        </div>
+                    )}
                 </div>
             )}
         </div>
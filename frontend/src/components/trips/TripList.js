@@ -1,7 +1,7 @@
 import React from 'react';
 import TripCard from './TripCard';
 
-const TripList = ({ trips, onEdit, onDelete, onMakeReservation, isAdmin, loading }) => {
+const TripList = ({ trips, onEdit, onDelete, onMakeReservation, isAdmin, loading, hasMore, onLoadMore }) => {
     if (loading) {
         return (
             <div className="text-center py-12">
@@ -24,18 +24,30 @@ const TripList = ({ trips, onEdit, onDelete, onMakeReservation, isAdmin, loading
     }
 
     return (
-        <div className="grid grid-cols-1 md:grid-cols-2 lg:grid-cols-3 gap-6">
-            {trips.map((trip) => (
-                <TripCard
-                    key={trip.id}
-                    trip={trip}
-                    onEdit={onEdit}
-                    onDelete={onDelete}
-                    onMakeReservation={onMakeReservation}
-                    isAdmin={isAdmin}
-                />
-            ))}
-        </div>
+        <>
+            <div className="grid grid-cols-1 md:grid-cols-2 lg:grid-cols-3 gap-6">
+                {trips.map((trip) => (
+                    <TripCard
+                        key={trip.id}
+                        trip={trip}
+                        onEdit={onEdit}
+                        onDelete={onDelete}
+                        onMakeReservation={onMakeReservation}
+                        isAdmin={isAdmin}
+                    />
+                ))}
+            </div>
+            {hasMore && (
+                <div className="text-center mt-8">
+                    <button
+                        onClick={onLoadMore}
+                        className="bg-blue-500 hover:bg-blue-600 text-white py-2 px-6 rounded-lg transition duration-200"
+                    >
+                        Load more trips
+                    </button>
+                </div>
+            )}
+        </>
     );
 };
 
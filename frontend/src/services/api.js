@@ -33,6 +33,20 @@ const apiCall = async (url, options = {}) => {
     }
 };
 
+// One page of a listing: the rows, and the cursor of the next page (null on the last page)
+const apiCallPage = async (url, { after, limit = 20, sort } = {}) => {
+    const params = new URLSearchParams({ limit });
+    if (after) params.append('after', after);
+    if (sort) params.append('sort', sort);
+
+    const response = await fetch(`${url}?${params}`);
+    if (!response.ok) {
+        const errorText = await response.text();
+        throw new Error(`HTTP ${response.status}: ${errorText}`);
+    }
+    return { items: await response.json(), nextCursor: response.headers.get('X-Next-Cursor') };
+};
+
 // Authentication API
 export const authAPI = {
     login: async (username, password) => {
@@ -59,6 +73,10 @@ export const tripAPI = {
         return await apiCall(`${API_BASE_URL}/trips`);
     },
 
+    getTripsPage: async (page) => {
+        return await apiCallPage(`${API_BASE_URL}/trips`, page);
+    },
+
     getTripById: async (id) => {
         return await apiCall(`${API_BASE_URL}/trips/${id}`);
     },
@@ -107,6 +125,10 @@ export const reservationAPI = {
         return await apiCall(`${API_BASE_URL}/reservations/trip/${tripId}`);
     },
 
+    getReservationsPage: async (tripId, page) => {
+        return await apiCallPage(`${API_BASE_URL}/reservations/trip/${tripId}`, page);
+    },
+
     cancelReservation: async (id) => {
         return await apiCall(`${API_BASE_URL}/reservations/${id}`, {
             method: 'DELETE'
@@ -120,6 +142,10 @@ export const userAPI = {
         return await apiCall(`${API_BASE_URL}/auth/users`);
     },
 
+    getUsersPage: async (page) => {
+        return await apiCallPage(`${API_BASE_URL}/auth/users`, page);
+    },
+
     createUser: async (id, username, password) => {
         return await apiCall(`${API_BASE_URL}/auth/users`, {
             method: 'POST',